@@ -0,0 +1,87 @@
+package twitch.bench;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import twitch.service.BroadcastDispatcher;
+import twitch.service.MessageTemplates;
+import twitch.service.StreamerManager;
+import twitch.service.TwitchAnnounceTask;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/* Подготовка повторного анонса и раздача его игрокам на больших ростерах */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnnounceBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rosterSize;
+
+    @Param({"10", "50"})
+    public int liveStreamers;
+
+    @Param({"200", "1000"})
+    public int players;
+
+    private ScheduledExecutorService storageExecutor;
+    private TwitchAnnounceTask task;
+    private BroadcastDispatcher dispatcher;
+    private List<Player> onlinePlayers;
+    private final LongAdder delivered = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storageExecutor = BenchStubs.storageExecutor();
+        // онлайн вдвое больше стримеров, чем в эфире
+        StreamerManager manager = BenchStubs.manager(storageExecutor, rosterSize, liveStreamers * 2, liveStreamers);
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("messages.stream_repeat_broadcast", "§d[СТРИМ] §a{player} §fстрим: &9{link}");
+        MessageTemplates templates = new MessageTemplates();
+        templates.compile(config.getConfigurationSection("messages"));
+        dispatcher = new BroadcastDispatcher(null);
+        task = new TwitchAnnounceTask(manager, dispatcher, templates);
+        onlinePlayers = BenchStubs.players(players, delivered);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public Component buildAnnouncement() {
+        return task.buildAnnouncement();
+    }
+
+    // анонс + одна задача на игрока со всеми строками
+    @Benchmark
+    public long buildAndFanOut() {
+        Component announcement = task.buildAnnouncement();
+        List<Consumer<Player>> batch = Collections.singletonList(BroadcastDispatcher.line(announcement));
+        dispatcher.deliver(onlinePlayers, batch);
+        return delivered.sum();
+    }
+}
@@ -0,0 +1,155 @@
+package twitch.bench;
+
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import twitch.model.StreamerInfo;
+import twitch.service.RosterStorage;
+import twitch.service.StreamerManager;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/* Заглушки для бенчмарков: ростер в памяти и игроки-прокси вместо запущенного сервера */
+final class BenchStubs {
+
+    private BenchStubs() {
+    }
+
+    static final class MemoryRosterStorage implements RosterStorage {
+        private final List<StreamerInfo> streamers;
+
+        MemoryRosterStorage(List<StreamerInfo> streamers) {
+            this.streamers = streamers;
+        }
+
+        @Override
+        public List<StreamerInfo> load() {
+            return streamers;
+        }
+
+        @Override
+        public void save(List<StreamerInfo> snapshot, Collection<StreamerInfo> upserted, Collection<StreamerInfo> removed) {
+        }
+    }
+
+    static List<StreamerInfo> roster(int size) {
+        List<StreamerInfo> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String twitch = "twitch_user_" + i;
+            result.add(new StreamerInfo(i, "Player_" + i, twitch, "https://www.twitch.tv/" + twitch, "", Integer.toString(100000 + i)));
+        }
+        return result;
+    }
+
+    // Менеджер с загруженным ростером; первые online стримеров на сервере, первые live из них в эфире
+    static StreamerManager manager(ScheduledExecutorService storageExecutor, int rosterSize, int online, int live) throws Exception {
+        StreamerManager manager = new StreamerManager(new YamlConfiguration(), new MemoryRosterStorage(roster(rosterSize)), null,
+                60_000L, storageExecutor);
+        // загрузка ростера поставлена в поток хранилища первой — дожидаемся её
+        storageExecutor.submit(() -> { }).get();
+        for (int i = 0; i < online; i++) {
+            StreamerInfo streamer = manager.playerJoined(new UUID(0L, i), "Player_" + i);
+            if (i < live) {
+                manager.setLive(streamer, true);
+            }
+        }
+        return manager;
+    }
+
+    static ScheduledExecutorService storageExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bench-storage");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Игроки, у которых планировщик выполняет задачу сразу, а sendMessage только считается
+    static List<Player> players(int count, LongAdder delivered) {
+        EntityScheduler scheduler = (EntityScheduler) Proxy.newProxyInstance(BenchStubs.class.getClassLoader(),
+                new Class<?>[]{EntityScheduler.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("run") && args != null && args.length >= 2 && args[1] instanceof Consumer) {
+                        @SuppressWarnings("unchecked")
+                        Consumer<ScheduledTask> task = (Consumer<ScheduledTask>) args[1];
+                        task.accept(null);
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+        List<Player> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID uuid = new UUID(1L, i);
+            result.add((Player) Proxy.newProxyInstance(BenchStubs.class.getClassLoader(),
+                    new Class<?>[]{Player.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getScheduler":
+                                return scheduler;
+                            case "getUniqueId":
+                                return uuid;
+                            case "sendMessage":
+                                delivered.increment();
+                                return null;
+                            default:
+                                return defaultValue(method.getReturnType());
+                        }
+                    }));
+        }
+        return result;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    // Ответ /helix/streams: count записей, из них live в эфире
+    static String streamsJson(int count, int live) {
+        StringBuilder sb = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":\"4000").append(i).append("\",\"user_id\":\"").append(100000 + i)
+                    .append("\",\"user_login\":\"twitch_user_").append(i)
+                    .append("\",\"user_name\":\"Twitch_User_").append(i)
+                    .append("\",\"game_id\":\"27471\",\"game_name\":\"Minecraft\",\"type\":\"").append(i < live ? "live" : "")
+                    .append("\",\"title\":\"Стрим \\u2014 выживание #").append(i)
+                    .append("\",\"viewer_count\":").append(i * 7)
+                    .append(",\"started_at\":\"2024-01-01T12:00:00Z\",\"language\":\"ru\",\"thumbnail_url\":\"https://static-cdn.jtvnw.net/previews-ttv/live_user_").append(i)
+                    .append("-{width}x{height}.jpg\",\"tag_ids\":[],\"tags\":[\"Русский\",\"Minecraft\"],\"is_mature\":false}");
+        }
+        sb.append("],\"pagination\":{}}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package twitch.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import twitch.model.HelixStreamsResult;
+import twitch.model.StreamRecord;
+import twitch.service.HelixStreamParser;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/* Разбор ответа /helix/streams и определение стримеров в эфире */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HelixParseBenchmark {
+
+    // 1 — одиночная проверка, 100 — полная пачка
+    @Param({"1", "20", "100"})
+    public int streams;
+
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        body = BenchStubs.streamsJson(streams, Math.max(1, streams / 2));
+    }
+
+    @Benchmark
+    public List<StreamRecord> parse() throws Exception {
+        return HelixStreamParser.parseStreams(new StringReader(body));
+    }
+
+    @Benchmark
+    public void parseAndDetectLive(Blackhole bh) throws Exception {
+        HelixStreamsResult result = HelixStreamsResult.ok(HelixStreamParser.parseStreams(new StringReader(body)));
+        Set<String> ids = result.liveUserIds();
+        Set<String> logins = result.liveLogins();
+        bh.consume(ids);
+        bh.consume(logins);
+    }
+}
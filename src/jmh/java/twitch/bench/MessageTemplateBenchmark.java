@@ -0,0 +1,78 @@
+package twitch.bench;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import twitch.model.StreamerInfo;
+import twitch.service.MessageTemplate;
+import twitch.service.MessageTemplates;
+
+import java.util.concurrent.TimeUnit;
+
+/* Отрисовка messages.*: строка для getMessage, компонент Adventure, кешированный фрагмент стримера */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageTemplateBenchmark {
+
+    private YamlConfiguration config;
+    private MessageTemplates templates;
+    private MessageTemplate startBroadcast;
+    private StreamerInfo streamer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        config = new YamlConfiguration();
+        config.set("messages.stream_start_broadcast", "§d[СТРИМ] §a{player} §fначал стрим\n&9{link}");
+        config.set("messages.stream_repeat_broadcast", "§d[СТРИМ] §a{player} §fстрим: &9{link}");
+        config.set("messages.streamer_list_entry", "§b• §a{player} §7(§5Twitch: {desc}§7) \n&9{link}");
+        config.set("messages.streamer_status_online", "§aСтример {player} сейчас В ЭФИРЕ!");
+        templates = new MessageTemplates();
+        templates.compile(config.getConfigurationSection("messages"));
+        startBroadcast = templates.get("stream_start_broadcast");
+        streamer = new StreamerInfo(0, "Player_0", "twitch_user_0", "https://www.twitch.tv/twitch_user_0", "");
+    }
+
+    // то, что раньше делал getMessage: config.getString + три replace + translateAlternateColorCodes
+    @Benchmark
+    public String legacyReplace() {
+        String msg = config.getString("messages.stream_start_broadcast", "");
+        msg = msg.replace("{player}", streamer.mcName).replace("{link}", streamer.url).replace("{desc}", streamer.twitchName);
+        return org.bukkit.ChatColor.translateAlternateColorCodes('&', msg);
+    }
+
+    @Benchmark
+    public String renderLegacy() {
+        return startBroadcast.renderLegacy(streamer.mcName, streamer.url, streamer.twitchName);
+    }
+
+    @Benchmark
+    public Component renderComponent() {
+        return startBroadcast.render(streamer.mcName, streamer.url, streamer.twitchName);
+    }
+
+    @Benchmark
+    public Component renderCachedStreamer() {
+        return startBroadcast.render(streamer);
+    }
+
+    @Benchmark
+    public MessageTemplates compileAll() {
+        MessageTemplates compiled = new MessageTemplates();
+        compiled.compile(config.getConfigurationSection("messages"));
+        return compiled;
+    }
+}
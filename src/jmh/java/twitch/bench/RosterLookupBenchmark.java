@@ -0,0 +1,88 @@
+package twitch.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import twitch.model.StreamerInfo;
+import twitch.service.StreamerManager;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/* Поиск в ростере StreamerManager: по MC-нику, Twitch-логину, статус эфира, онлайн-стримеры */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RosterLookupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int rosterSize;
+
+    private ScheduledExecutorService storageExecutor;
+    private StreamerManager manager;
+    private String[] mcNames;
+    private String[] twitchNames;
+    private StreamerInfo[] streamers;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        storageExecutor = BenchStubs.storageExecutor();
+        manager = BenchStubs.manager(storageExecutor, rosterSize, Math.min(rosterSize, 20), 5);
+        mcNames = new String[rosterSize];
+        twitchNames = new String[rosterSize];
+        streamers = manager.getStreamers().toArray(new StreamerInfo[0]);
+        for (int i = 0; i < rosterSize; i++) {
+            // ввод игрока — в произвольном регистре
+            mcNames[i] = "PLAYER_" + i;
+            twitchNames[i] = "Twitch_User_" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storageExecutor.shutdownNow();
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = i + 1 == rosterSize ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public StreamerInfo findByMcName() {
+        return manager.findByMcName(mcNames[next()]);
+    }
+
+    @Benchmark
+    public StreamerInfo findByTwitchName() {
+        return manager.findByTwitchName(twitchNames[next()]);
+    }
+
+    @Benchmark
+    public boolean isLive() {
+        return manager.isLive(streamers[next()]);
+    }
+
+    @Benchmark
+    public void onlineLiveScan(Blackhole bh) {
+        for (StreamerInfo s : manager.getOnlineStreamers()) {
+            bh.consume(manager.isLive(s));
+        }
+    }
+}
@@ -2,34 +2,55 @@ package twitch;
 
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.ChatColor;
-import org.bukkit.event.HandlerList;
 
 import net.luckperms.api.LuckPerms;
 import net.luckperms.api.LuckPermsProvider;
 import net.luckperms.api.node.NodeType;
 
+import twitch.model.HelixStreamsResult;
 import twitch.model.StreamerInfo;
 import twitch.service.StreamerManager;
+import twitch.service.YamlRosterStorage;
 import twitch.service.TwitchApiService;
+import twitch.service.EventSubClient;
+import twitch.service.RequestScheduler;
 import twitch.service.TwitchAnnounceTask;
 import twitch.command.TwitchCommand;
 
 public class TwitchStreamPlugin extends JavaPlugin {
 
+    private static final int HELIX_BATCH_SIZE = 100; // максимум user_id/user_login в одном запросе Helix
     private static java.util.Map<String, Long> lastErrorLogTime = new java.util.HashMap<>();
     private final java.util.Set<String> streamCheckInFlight = java.util.concurrent.ConcurrentHashMap.newKeySet();
     private java.util.concurrent.ExecutorService executorService; //асинхронная задач
     private FileConfiguration config;
     private TwitchCommand twitchCommand;
     private LuckPerms luckPerms;
+    private twitch.service.GroupSyncService groupSyncService;
     private String clientId;
     private String oauthToken;
     private String twitchGroup; 
     private TwitchApiService twitchApiService;
-    private StreamerManager streamerManager;
+    private EventSubClient eventSubClient;
+    private volatile StreamerManager streamerManager;
+    private twitch.service.BroadcastDispatcher broadcastDispatcher;
+    // адаптивный опрос (null — все онлайн-стримеры проверяются раз в stream_check_period)
+    private volatile twitch.service.PollScheduler pollScheduler;
+    private volatile twitch.service.StreamStatusCache statusCache;
+    private twitch.service.UserIdResolver userIdResolver;
+    private io.papermc.paper.threadedregions.scheduler.ScheduledTask userIdTask = null;
+    private final twitch.service.MessageTemplates messageTemplates = new twitch.service.MessageTemplates();
+    // единственный поток работы с хранилищем ростера (файл/БД); общий для всех пересозданий менеджера
+    private java.util.concurrent.ScheduledExecutorService storageExecutor;
     private io.papermc.paper.threadedregions.scheduler.ScheduledTask announceTask = null;
     private io.papermc.paper.threadedregions.scheduler.ScheduledTask streamCheckerTask = null;
+    private final twitch.service.MetricsRegistry metrics = new twitch.service.MetricsRegistry();
+    private twitch.service.MetricsHttpEndpoint metricsEndpoint;
+    private twitch.service.SkullProfileCache profileCache;
+    // координация нескольких серверов (null — сервер опрашивает Twitch сам)
+    private volatile twitch.service.ClusterCoordinator cluster;
+    // статусы эфира прошлого запуска (null — тёплый перезапуск выключен)
+    private twitch.service.LiveStatusSnapshot liveSnapshot;
 
     public String getTwitchGroup() {
         return twitchGroup;
@@ -38,59 +59,571 @@ public class TwitchStreamPlugin extends JavaPlugin {
     @Override
     public void onEnable() {
     getLogger().info("[TWITCH INIT] Вызван onEnable(). Начало инициализации плагина...");
-        getLogger().info("[TWITCH INIT] Инициализация ExecutorService...");
-        this.executorService = java.util.concurrent.Executors.newCachedThreadPool();
+        this.storageExecutor = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TwitchStream-storage");
+            t.setDaemon(true);
+            return t;
+        });
         getLogger().info("[TWITCH INIT] Сохранение/загрузка стандартного конфига...");
         saveDefaultConfig();
         this.config = getConfig();
         this.clientId = config.getString("twitch.client_id");
         this.oauthToken = config.getString("twitch.oauth_token");
-        this.streamerManager = new StreamerManager(config);
+        getLogger().info("[TWITCH INIT] Инициализация ExecutorService...");
+        this.executorService = twitch.service.CheckExecutors.create(
+                config.getString("twitch.executor.mode", twitch.service.CheckExecutors.MODE_BOUNDED),
+                config.getInt("twitch.executor.threads", 4),
+                config.getInt("twitch.executor.queue_size", 64),
+                getLogger());
+        messageTemplates.compile(config.getConfigurationSection("messages"));
+        this.statusCache = new twitch.service.StreamStatusCache(config.getLong("twitch.status_cache_ttl_ms", 30000L));
+        this.profileCache = new twitch.service.SkullProfileCache(new java.io.File(getDataFolder(), "profiles.yml"),
+                config.getLong("twitch.profiles.refresh_hours", 168L) * 3_600_000L,
+                config.getLong("twitch.profiles.lookup_interval_ms", 250L));
+        startLiveSnapshot();
+        this.streamerManager = trackOnlinePlayers(createStreamerManager());
+        this.broadcastDispatcher = new twitch.service.BroadcastDispatcher(this);
         getLogger().info("[TWITCH INIT] Загрузка API LuckPerms...");
         this.luckPerms = getServer().getServicesManager().load(LuckPerms.class);
+        this.groupSyncService = new twitch.service.GroupSyncService(luckPerms, this::getTwitchGroup, getLogger(),
+                config.getInt("twitch.group_sync_queue", 1024));
         getLogger().info("[TWITCH INIT] Инициализация TwitchApiService...");
-        this.twitchApiService = new TwitchApiService(clientId, oauthToken, getLogger());
+        this.twitchApiService = new TwitchApiService(clientId, oauthToken, getLogger(),
+                config.getLong("twitch.http.connect_timeout_ms", TwitchApiService.DEFAULT_CONNECT_TIMEOUT_MS),
+                config.getLong("twitch.http.request_timeout_ms", TwitchApiService.DEFAULT_REQUEST_TIMEOUT_MS),
+                config.getInt("twitch.rate_limit.default_limit", RequestScheduler.DEFAULT_LIMIT),
+                config.getInt("twitch.rate_limit.background_reserve", 20));
+        twitchApiService.setMetrics(metrics);
+        registerMetrics();
     // Валидация подключения к Twitch API, чтобы не блокировать основной поток
         getLogger().info("[TWITCH INIT] Отправка задачи проверки подключения к Twitch API в отдельный поток...");
         executorService.submit(() -> this.twitchApiService.validateConnection());
         getLogger().info("[TWITCH INIT] Чтение twitch-группы из конфига...");
-        this.twitchGroup = config.getString("group", "twitch_on"); // по умолчанию
+        this.twitchGroup = config.getString("twitch.group", "twitch_on"); // Группа для выдачи, ПО УМОЛЧАНИЮ twitch_on
         getLogger().info("[TWITCH INIT] Проверка LuckPerms...");
         if (this.luckPerms == null) {
             getLogger().severe("LuckPerms не найден! Плагин не сможет выдавать группы.");
         }
+        // команда и слушатели регистрируются один раз; /стрим reload их не пересоздаёт
+        twitchCommand = new TwitchCommand(this, streamerManager);
+        getCommand("стрим").setExecutor(twitchCommand);
+        getCommand("стрим").setTabCompleter(twitchCommand);
+        startUserIdResolver();
+        startCluster();
+        startEventSub();
+        startStreamChecker();
         getLogger().info("[TWITCH INIT] Запуск задачи анонса стримеров...");
-        // анонс стримеров
         startAnnounceTask();
-        reloadPlugin();
+        startMetricsEndpoint();
         getLogger().info("[TWITCH INIT] Инициализация завершена!");
         getLogger().info("[TWITCH] TwitchStreamPlugin работает.");
     }
 
     public String getMessage(String key) {
-        String msg = config.getString("messages." + key, "");
-        return ChatColor.translateAlternateColorCodes('&', msg);
+        return messageTemplates.get(key).renderLegacy(null, null, null);
+    }
+
+    public twitch.service.MessageTemplates getMessageTemplates() {
+        return messageTemplates;
+    }
+
+    public twitch.service.BroadcastDispatcher getBroadcastDispatcher() {
+        return broadcastDispatcher;
     }
 
+    // /стрим reload: старый и новый config.yml сравниваются, перезапускается только изменившееся.
+    // Менеджер стримеров, слушатели, кеши, статусы эфира и идущие проверки остаются
     public void reloadTwitchConfig() {
+        FileConfiguration old = config;
         reloadConfig();
         this.config = getConfig();
-        reloadPlugin();
+        java.util.List<String> applied = new java.util.ArrayList<>();
+        if (changed(old, config, "messages")) {
+            messageTemplates.compile(config.getConfigurationSection("messages"));
+            applied.add("сообщения");
+        }
+        if (changed(old, config, "twitch.group")) {
+            this.twitchGroup = config.getString("twitch.group", "twitch_on");
+            applied.add("группа");
+        }
+        boolean credentialsChanged = changed(old, config, "twitch.client_id", "twitch.oauth_token");
+        if (credentialsChanged) {
+            this.clientId = config.getString("twitch.client_id");
+            this.oauthToken = config.getString("twitch.oauth_token");
+            twitchApiService.updateCredentials(clientId, oauthToken);
+            executorService.submit(() -> this.twitchApiService.validateConnection());
+            applied.add("ключи Twitch API");
+        }
+        if (changed(old, config, "twitch.status_cache_ttl_ms")) {
+            this.statusCache = new twitch.service.StreamStatusCache(config.getLong("twitch.status_cache_ttl_ms", 30000L));
+            applied.add("кеш статусов");
+        }
+        boolean storageChanged = changed(old, config, "twitch.storage", "twitch.database", "twitch.save_delay_ms");
+        if (storageChanged) {
+            streamerManager.replaceStorage(createRosterStorage(), config.getLong("twitch.save_delay_ms", 1000L));
+            applied.add("хранилище ростера");
+        } else {
+            // ручные правки streamers.yml или таблицы: применяется только разница
+            streamerManager.reloadStreamers();
+        }
+        boolean clusterChanged = changed(old, config, "twitch.cluster")
+                || (storageChanged && "postgres".equalsIgnoreCase(config.getString("twitch.cluster.mode", "none")));
+        if (clusterChanged) {
+            startCluster();
+            applied.add("кластер");
+        }
+        boolean eventSubChanged = credentialsChanged || clusterChanged || changed(old, config, "twitch.eventsub");
+        if (eventSubChanged) {
+            // новая сессия подписывается с новыми ключами и адресами
+            if (eventSubClient != null) {
+                eventSubClient.stop();
+                eventSubClient = null;
+            }
+            startEventSub();
+            applied.add("EventSub");
+        }
+        if (eventSubChanged || changed(old, config, "twitch.stream_check_period", "twitch.poll")) {
+            startStreamChecker();
+            applied.add("опрос");
+        }
+        if (changed(old, config, "twitch.announce_period")) {
+            startAnnounceTask();
+            applied.add("анонсы");
+        }
+        if (changed(old, config, "twitch.user_ids")) {
+            startUserIdResolver();
+            applied.add("user_id");
+        }
+        if (changed(old, config, "twitch.metrics.prometheus")) {
+            startMetricsEndpoint();
+            applied.add("Prometheus");
+        }
+        getLogger().info("[TWITCH] Конфиг перезагружен" + (applied.isEmpty() ? ", перезапускать нечего" : ": " + String.join(", ", applied)));
+        java.util.List<String> restartOnly = new java.util.ArrayList<>();
+        for (String path : new String[]{"twitch.executor", "twitch.http.connect_timeout_ms", "twitch.http.request_timeout_ms",
+                "twitch.rate_limit", "twitch.group_sync_queue", "twitch.profiles", "twitch.warm_restart"}) {
+            if (changed(old, config, path)) {
+                restartOnly.add(path);
+            }
+        }
+        if (!restartOnly.isEmpty()) {
+            getLogger().warning("[TWITCH] Применятся после перезапуска сервера: " + String.join(", ", restartOnly));
+        }
     }
 
-    public void reloadPlugin() {
-        this.clientId = config.getString("twitch.client_id");
-        this.oauthToken = config.getString("twitch.oauth_token");
-        this.twitchGroup = config.getString("twitch.group", "twitch_on"); // Группа для выдачи, ПО УМОЛЧАНИЮ twitch_on
-        this.streamerManager = new StreamerManager(config);
-        if (twitchCommand != null) {
-            HandlerList.unregisterAll(twitchCommand);
+    // значения по путям различаются; раздел сравнивается по всем вложенным значениям
+    private static boolean changed(FileConfiguration old, FileConfiguration now, String... paths) {
+        for (String path : paths) {
+            if (!java.util.Objects.equals(configValue(old, path), configValue(now, path))) {
+                return true;
+            }
         }
-        twitchCommand = new TwitchCommand(this, streamerManager);
-        getCommand("стрим").setExecutor(twitchCommand);
-        startStreamChecker();
-        startAnnounceTask();
+        return false;
+    }
+
+    private static Object configValue(FileConfiguration config, String path) {
+        Object value = config.get(path);
+        if (value instanceof org.bukkit.configuration.ConfigurationSection section) {
+            java.util.Map<String, Object> leaves = new java.util.TreeMap<>();
+            for (java.util.Map.Entry<String, Object> e : section.getValues(true).entrySet()) {
+                if (!(e.getValue() instanceof org.bukkit.configuration.ConfigurationSection)) {
+                    leaves.put(e.getKey(), e.getValue());
+                }
+            }
+            return leaves;
+        }
+        return value;
+    }
+
+    // Мгновенные значения читаются при запросе метрик, поэтому переживают пересоздание менеджера и планировщика
+    private void registerMetrics() {
+        metrics.describe("twitch_api_requests_total", "HTTP-запросы к Twitch API по endpoint и коду ответа");
+        metrics.describe("twitch_api_request_duration_ms", "Время ответа Twitch API, мс");
+        metrics.describe("twitch_api_rate_limited_total", "Ответы 429 от Twitch API");
+        metrics.describe("twitch_api_backoff_skipped_total", "Запросы, не отправленные из-за backoff после 429");
+        metrics.describe("twitch_check_errors_total", "Ошибки проверки стримов по типу сетевой проблемы");
+        metrics.describe("twitch_check_rejected_total", "Проверки, отклонённые переполненной очередью");
+        metrics.describe("twitch_live_transitions_total", "Переходы стримеров в эфир и из эфира");
+        metrics.describe("twitch_task_duration_ms", "Время задач глобального региона, мс");
+        metrics.gauge("twitch_checks_in_flight", () -> streamCheckInFlight.size());
+        metrics.gauge("twitch_check_executor_queue", () -> twitch.service.CheckExecutors.queueDepth(executorService));
+        metrics.gauge("twitch_request_scheduler_queue", () -> twitchApiService.getRequestScheduler().getQueueSize());
+        metrics.gauge("twitch_request_tokens_available", () -> twitchApiService.getRequestScheduler().getAvailableTokens());
+        metrics.gauge("twitch_ratelimit_remaining", () -> {
+            try {
+                return Long.parseLong(twitchApiService.getLastRateLimitRemaining().trim());
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        });
+        metrics.gauge("twitch_group_sync_queue", () -> groupSyncService.getQueueSize());
+        metrics.gauge("twitch_online_streamers", () -> streamerManager.getOnlineCount());
+        metrics.gauge("twitch_cluster_leader", () -> {
+            twitch.service.ClusterCoordinator c = cluster;
+            return c == null || c.isLeader() ? 1L : 0L;
+        });
+        metrics.gauge("twitch_poll_scheduled", () -> {
+            twitch.service.PollScheduler scheduler = pollScheduler;
+            return scheduler != null ? scheduler.size() : 0;
+        });
+    }
+
+    // Необязательная точка /metrics для Prometheus; пересоздаётся при reload
+    private void startMetricsEndpoint() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+            metricsEndpoint = null;
+        }
+        if (config.getBoolean("twitch.metrics.prometheus.enabled", false)) {
+            metricsEndpoint = twitch.service.MetricsHttpEndpoint.start(
+                    config.getString("twitch.metrics.prometheus.host", "127.0.0.1"),
+                    config.getInt("twitch.metrics.prometheus.port", 9464),
+                    metrics, getLogger());
+        }
+    }
+
+    public twitch.service.SkullProfileCache getProfileCache() {
+        return profileCache;
+    }
+
+    public twitch.service.MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    // Несколько серверов с одним client_id: Twitch опрашивает только лидер, остальные берут статусы из общего хранилища
+    private void startCluster() {
+        if (cluster != null) {
+            cluster.shutdown();
+            cluster = null;
+        }
+        String mode = config.getString("twitch.cluster.mode", "none").toLowerCase(java.util.Locale.ROOT);
+        if (mode.equals("none")) {
+            return;
+        }
+        twitch.service.ClusterStore store;
+        try {
+            if (mode.equals("postgres")) {
+                store = new twitch.service.PostgresClusterStore(twitch.service.DatabaseSettings.from(config));
+            } else if (mode.equals("file")) {
+                String directory = config.getString("twitch.cluster.directory", "");
+                store = new twitch.service.FileClusterStore(directory.isEmpty()
+                        ? new java.io.File(getDataFolder(), "cluster").toPath()
+                        : java.nio.file.Paths.get(directory));
+            } else {
+                getLogger().warning("[TWITCH CLUSTER] Неизвестный twitch.cluster.mode: " + mode + ", сервер опрашивает Twitch сам");
+                return;
+            }
+        } catch (Exception e) {
+            getLogger().warning("[TWITCH CLUSTER] Общее хранилище недоступно, сервер опрашивает Twitch сам: " + e);
+            return;
+        }
+        String nodeId = config.getString("twitch.cluster.node_id", "");
+        if (nodeId == null || nodeId.isEmpty()) {
+            nodeId = java.util.UUID.randomUUID().toString().substring(0, 8);
+        }
+        long syncPeriodMs = config.getLong("twitch.cluster.sync_period_ms", 5000L);
+        cluster = new twitch.service.ClusterCoordinator(store, nodeId,
+                () -> onlineKeys(false),
+                () -> onlineKeys(true),
+                new twitch.service.ClusterCoordinator.Listener() {
+                    @Override
+                    public void onLeadershipChanged(boolean leader) {
+                        // опрос и EventSub запускаются только у лидера
+                        getServer().getGlobalRegionScheduler().execute(TwitchStreamPlugin.this, () -> {
+                            startEventSub();
+                            startStreamChecker();
+                        });
+                    }
+
+                    @Override
+                    public void onStatuses(java.util.Map<String, Boolean> statuses) {
+                        getServer().getGlobalRegionScheduler().execute(TwitchStreamPlugin.this, () -> {
+                            for (StreamerInfo streamer : streamerManager.getOnlineStreamers()) {
+                                Boolean live = statuses.get(streamer.twitchKey);
+                                if (live != null) {
+                                    applyLiveStatus(streamer, live);
+                                }
+                            }
+                        });
+                    }
+                },
+                syncPeriodMs,
+                syncPeriodMs * 3L,
+                config.getLong("twitch.cluster.status_ttl_ms", 900000L),
+                getLogger());
+    }
+
+    private java.util.List<String> onlineKeys(boolean twitch) {
+        java.util.List<String> keys = new java.util.ArrayList<>();
+        for (StreamerInfo streamer : streamerManager.getOnlineStreamers()) {
+            keys.add(twitch ? streamer.twitchKey : streamer.mcKey);
+        }
+        return keys;
+    }
+
+    private boolean isFollower() {
+        twitch.service.ClusterCoordinator c = cluster;
+        return c != null && !c.isLeader();
+    }
+
+    // Стример на другом сервере кластера, которого опрашивает этот узел как лидер
+    private boolean isRemoteTarget(StreamerInfo streamer) {
+        twitch.service.ClusterCoordinator c = cluster;
+        return c != null && c.isLeader() && streamerManager.getOnlineStreamer(streamer.mcKey) == null
+                && c.isClusterOnline(streamer.mcKey);
+    }
+
+    // Стример ещё в игре здесь или на другом сервере кластера; ответ на вышедшего игрока статус не меняет
+    private boolean isTracked(StreamerInfo streamer) {
+        return org.bukkit.Bukkit.getPlayerExact(streamer.mcName) != null || isRemoteTarget(streamer);
+    }
+
+    // Кого опрашивать: онлайн-стримеры этого сервера, у лидера кластера — всех серверов
+    private java.util.List<StreamerInfo> pollTargets() {
+        java.util.List<StreamerInfo> targets = streamerManager.getOnlineStreamers();
+        twitch.service.ClusterCoordinator c = cluster;
+        if (c != null && c.isLeader()) {
+            for (String key : c.getClusterOnline()) {
+                if (streamerManager.getOnlineStreamer(key) == null) {
+                    StreamerInfo streamer = streamerManager.findByMcName(key);
+                    if (streamer != null) {
+                        targets.add(streamer);
+                    }
+                }
+            }
+        }
+        return targets;
+    }
+
+    private StreamerInfo pollTarget(String mcKey) {
+        StreamerInfo streamer = streamerManager.getOnlineStreamer(mcKey);
+        if (streamer == null) {
+            twitch.service.ClusterCoordinator c = cluster;
+            if (c != null && c.isLeader() && c.isClusterOnline(mcKey)) {
+                streamer = streamerManager.findByMcName(mcKey);
+            }
+        }
+        return streamer;
+    }
+
+    // user_id разрешаются один раз и хранятся в ростере; раз в refresh_period логины сверяются по id
+    private void startUserIdResolver() {
+        if (userIdTask != null) {
+            userIdTask.cancel();
+        }
+        twitch.service.UserIdResolver resolver = new twitch.service.UserIdResolver(twitchApiService, streamerManager, getLogger());
+        userIdResolver = resolver;
+        long resolvePeriod = Math.max(1L, config.getLong("twitch.user_ids.resolve_period", 1200L));
+        long refreshEvery = Math.max(1L, config.getLong("twitch.user_ids.refresh_period", 432000L) / resolvePeriod);
+        long[] runs = {0L};
+        userIdTask = getServer().getGlobalRegionScheduler().runAtFixedRate(
+            this,
+            task -> {
+                if (isFollower()) {
+                    return;
+                }
+                resolver.resolvePending();
+                if (++runs[0] % refreshEvery == 0L) {
+                    resolver.refreshLogins();
+                }
+            },
+            40L, // ростер загружается асинхронно
+            resolvePeriod
+        );
+    }
+
+    // Новые записи ростера получают user_id сразу, не дожидаясь периодической задачи
+    public void resolveUserIds() {
+        twitch.service.UserIdResolver resolver = userIdResolver;
+        if (resolver != null) {
+            resolver.resolvePending();
+        }
+    }
+
+    // Параметр /helix/streams для стримера: user_id, если он уже известен
+    private static String streamQueryParam(StreamerInfo streamer) {
+        return streamer.hasTwitchId() ? "user_id=" + streamer.twitchId : "user_login=" + streamer.twitchName;
+    }
+
+    private boolean isLiveIn(StreamerInfo streamer, java.util.Set<String> liveUserIds, java.util.Set<String> liveLogins) {
+        return streamer.hasTwitchId() ? liveUserIds.contains(streamer.twitchId) : liveLogins.contains(streamer.twitchKey);
+    }
+
+    // Логин в ответе /streams отличается от ростера — канал переименован
+    private void detectRenames(HelixStreamsResult result) {
+        twitch.service.UserIdResolver resolver = userIdResolver;
+        if (resolver != null) {
+            for (twitch.model.StreamRecord record : result.streams) {
+                resolver.onLoginSeen(record.userId, record.userLogin);
+            }
+        }
+    }
+
+    // EventSub WebSocket: старт/стоп стримов приходят push-уведомлениями, опрос остаётся редкой сверкой
+    private void startEventSub() {
+        // в кластере подписки держит только лидер
+        boolean enabled = config.getBoolean("twitch.eventsub.enabled", false) && !isFollower();
+        if (!enabled) {
+            if (eventSubClient != null) {
+                eventSubClient.stop();
+                eventSubClient = null;
+            }
+            return;
+        }
+        if (eventSubClient == null) {
+            eventSubClient = new EventSubClient(
+                    twitchApiService,
+                    getLogger(),
+                    config.getString("twitch.eventsub.url", EventSubClient.DEFAULT_URL),
+                    config.getString("twitch.eventsub.subscriptions_url", EventSubClient.DEFAULT_SUBSCRIPTIONS_URL),
+                    config.getInt("twitch.eventsub.max_subscriptions", EventSubClient.DEFAULT_MAX_SUBSCRIPTIONS),
+                    new EventSubClient.Listener() {
+                        @Override
+                        public void onStreamOnline(String userId) {
+                            onEventSubTransition(userId, true);
+                        }
+
+                        @Override
+                        public void onStreamOffline(String userId) {
+                            onEventSubTransition(userId, false);
+                        }
+                    });
+            eventSubClient.start(rosterUserIds());
+        } else {
+            eventSubClient.syncUserIds(rosterUserIds());
+        }
+    }
+
+    // user_id для подписок: сначала те, кого сейчас опрашиваем, затем остальной ростер; без id — только опрос
+    private java.util.List<String> rosterUserIds() {
+        java.util.List<String> ids = new java.util.ArrayList<>();
+        for (StreamerInfo streamer : pollTargets()) {
+            if (streamer.hasTwitchId()) {
+                ids.add(streamer.twitchId);
+            }
+        }
+        for (StreamerInfo streamer : streamerManager.getStreamers()) {
+            if (streamer.hasTwitchId()) {
+                ids.add(streamer.twitchId);
+            }
+        }
+        return ids;
+    }
+
+    private void onEventSubTransition(String userId, boolean isLive) {
+        getServer().getGlobalRegionScheduler().execute(this, () -> {
+            StreamerInfo streamer = streamerManager.findByTwitchId(userId);
+            if (streamer != null && isTracked(streamer)) {
+                applyLiveStatus(streamer, isLive);
+            }
+        });
+    }
+    private StreamerManager createStreamerManager() {
+        twitch.service.RosterStorage storage = createRosterStorage();
+        long saveDelayMs = config.getLong("twitch.save_delay_ms", 1000L);
+        // новая база заполняется из streamers.yml (или config.yml, если файла нет)
+        twitch.service.RosterStorage importSource = storage instanceof YamlRosterStorage ? null : yamlRosterStorage();
+        return new StreamerManager(config, storage, importSource, saveDelayMs, storageExecutor);
+    }
+
+    private YamlRosterStorage yamlRosterStorage() {
+        return new YamlRosterStorage(new java.io.File(getDataFolder(), "streamers.yml"));
+    }
+
+    // хранилище по twitch.storage; если PostgreSQL недоступен — streamers.yml
+    private twitch.service.RosterStorage createRosterStorage() {
+        String storageType = config.getString("twitch.storage", "yaml");
+        if ("postgres".equalsIgnoreCase(storageType)) {
+            try {
+                twitch.service.PostgresRosterStorage pgStorage =
+                        new twitch.service.PostgresRosterStorage(twitch.service.DatabaseSettings.from(config));
+                getLogger().info("[TWITCH INIT] Хранилище ростера: PostgreSQL");
+                return pgStorage;
+            } catch (RuntimeException e) {
+                getLogger().warning("[TWITCH INIT] Не удалось подключиться к PostgreSQL, используется streamers.yml: " + e.getMessage());
+            }
+        } else if (!"yaml".equalsIgnoreCase(storageType)) {
+            getLogger().warning("[TWITCH INIT] Неизвестный twitch.storage: " + storageType + ", используется yaml");
+        }
+        return yamlRosterStorage();
+    }
+
+    // игроки, уже находящиеся на сервере при создании менеджера (перезагрузка)
+    private StreamerManager trackOnlinePlayers(StreamerManager manager) {
+        for (org.bukkit.entity.Player p : org.bukkit.Bukkit.getOnlinePlayers()) {
+            manager.playerJoined(p.getUniqueId(), p.getName());
+        }
+        if (liveSnapshot != null) {
+            manager.afterLoad(() -> restoreLiveStatus(manager));
+        }
+        return manager;
+    }
+
+    // Тёплый перезапуск: статусы эфира читаются до загрузки ростера и сохраняются периодически и при выключении
+    private void startLiveSnapshot() {
+        if (!config.getBoolean("twitch.warm_restart.enabled", true)) {
+            return;
+        }
+        liveSnapshot = new twitch.service.LiveStatusSnapshot(
+                new java.io.File(getDataFolder(), "live-status.txt").toPath(),
+                config.getLong("twitch.warm_restart.max_age_seconds", 600L) * 1000L);
+        storageExecutor.execute(() -> {
+            try {
+                liveSnapshot.load();
+            } catch (java.io.IOException e) {
+                getLogger().warning("[TWITCH INIT] Не удалось прочитать live-status.txt: " + e.getMessage());
+            }
+        });
+        long savePeriod = Math.max(5L, config.getLong("twitch.warm_restart.save_period_seconds", 60L));
+        storageExecutor.scheduleWithFixedDelay(this::saveLiveSnapshot, savePeriod, savePeriod, java.util.concurrent.TimeUnit.SECONDS);
+    }
+
+    private void saveLiveSnapshot() {
+        StreamerManager manager = streamerManager;
+        if (liveSnapshot == null || manager == null) {
+            return;
+        }
+        try {
+            liveSnapshot.save(liveOnlineKeys(manager));
+        } catch (java.io.IOException e) {
+            getLogger().warning("[TWITCH] Не удалось сохранить live-status.txt: " + e.getMessage());
+        }
+    }
+
+    private static java.util.Set<String> liveOnlineKeys(StreamerManager manager) {
+        java.util.Set<String> keys = new java.util.HashSet<>();
+        for (StreamerInfo streamer : manager.getOnlineStreamers()) {
+            if (manager.isLive(streamer)) {
+                keys.add(streamer.twitchKey);
+            }
+        }
+        return keys;
+    }
+
+    // Поток хранилища, ростер загружен: стримеры на сервере, бывшие в эфире, сразу считаются в эфире
+    // без анонса, а сверка с Twitch идёт одной пакетной проверкой
+    private void restoreLiveStatus(StreamerManager manager) {
+        if (manager != streamerManager) {
+            return;
+        }
+        java.util.List<StreamerInfo> restored = new java.util.ArrayList<>();
+        for (StreamerInfo streamer : manager.getOnlineStreamers()) {
+            if (liveSnapshot.take(streamer.twitchKey) && manager.restoreLive(streamer)) {
+                restored.add(streamer);
+            }
+        }
+        if (restored.isEmpty()) {
+            return;
+        }
+        getLogger().info("[TWITCH INIT] Восстановлен статус эфира для " + restored.size() + " стримеров, сверка с Twitch одним запросом");
+        getServer().getGlobalRegionScheduler().execute(this, () -> {
+            // у ведомого узла кластера статусы придут от лидера
+            if (!isFollower()) {
+                checkStreamers(restored);
+            }
+        });
     }
+
     private void startAnnounceTask() {
         long announcePeriod = config.getLong("twitch.announce_period", 72000L);
         if (announceTask != null) {
@@ -98,7 +631,11 @@ public class TwitchStreamPlugin extends JavaPlugin {
         }
         announceTask = getServer().getGlobalRegionScheduler().runAtFixedRate(
             this,
-            task -> new TwitchAnnounceTask(this, streamerManager).run(),
+            task -> {
+                long start = System.nanoTime();
+                new TwitchAnnounceTask(streamerManager, broadcastDispatcher, messageTemplates).run();
+                metrics.observeSince("twitch_task_duration_ms", twitch.service.MetricsRegistry.TASK_DURATION_BUCKETS_MS, start, "task", "announce");
+            },
             announcePeriod, // initial delay
             announcePeriod  // period
         );
@@ -106,33 +643,137 @@ public class TwitchStreamPlugin extends JavaPlugin {
 
     private void startStreamChecker() {
         long checkPeriod = config.getLong("twitch.stream_check_period", 1200L);
+        // при EventSub каналы с подпиской сверяются раз в reconcile_period, не уместившиеся в лимит опрашиваются как обычно
+        long reconcileEvery = Math.max(1L, config.getLong("twitch.eventsub.reconcile_period", 12000L) / Math.max(1L, checkPeriod));
         if (streamCheckerTask != null) {
             streamCheckerTask.cancel();
+            streamCheckerTask = null;
+        }
+        // в кластере опрашивает только лидер; остальные получают статусы от координатора
+        if (isFollower()) {
+            pollScheduler = null;
+            return;
+        }
+        // при EventSub опрос — только сверка, адаптивное расписание не нужно
+        if (eventSubClient == null && config.getBoolean("twitch.poll.adaptive", true)) {
+            startAdaptivePolling(checkPeriod);
+            return;
         }
+        pollScheduler = null;
+        long[] runs = {0L};
         streamCheckerTask = getServer().getGlobalRegionScheduler().runAtFixedRate(
             this,
             task -> {
-                for (StreamerInfo streamer : streamerManager.getStreamers()) {
-                    if (org.bukkit.Bukkit.getPlayerExact(streamer.mcName) != null) {
-                        checkTwitchStream(streamer);
-                    } else {
-                        streamerManager.getStreamerLiveStatus().put(streamer.twitchName.toLowerCase(), false);
+                // только стримеры на сервере; вышедшие сбрасываются в PlayerQuitEvent
+                long start = System.nanoTime();
+                java.util.List<StreamerInfo> targets = pollTargets();
+                EventSubClient eventSub = eventSubClient;
+                if (eventSub != null && runs[0]++ % reconcileEvery != 0L) {
+                    targets.removeIf(streamer -> eventSub.isSubscribed(streamer.twitchId));
+                }
+                checkStreamers(targets);
+                logCheckerStats();
+                metrics.observeSince("twitch_task_duration_ms", twitch.service.MetricsRegistry.TASK_DURATION_BUCKETS_MS, start, "task", "checker");
+            },
+            1L,
+            checkPeriod
+        );
+    }
+
+    // Колесо таймеров крутится каждые poll.tick_period тиков; за тик проверяются только стримеры, чей срок подошёл
+    private void startAdaptivePolling(long checkPeriod) {
+        long tickPeriod = Math.max(1L, config.getLong("twitch.poll.tick_period", 20L));
+        long ticksPerMinute = Math.max(1L, 1200L / tickPeriod);
+        twitch.service.PollScheduler scheduler = new twitch.service.PollScheduler(
+                config.getLong("twitch.poll.join_delay", 40L) / tickPeriod,
+                config.getLong("twitch.poll.live_interval", 2400L) / tickPeriod,
+                checkPeriod / tickPeriod,
+                config.getLong("twitch.poll.offline_max_interval", 6000L) / tickPeriod,
+                config.getDouble("twitch.poll.jitter", 0.2));
+        pollScheduler = scheduler;
+        long[] tick = {0L};
+        streamCheckerTask = getServer().getGlobalRegionScheduler().runAtFixedRate(
+            this,
+            task -> {
+                long start = System.nanoTime();
+                // раз в период подхватываем онлайн-стримеров, которых нет в расписании (перезагрузка, добавление)
+                if (tick[0] % Math.max(1L, checkPeriod / tickPeriod) == 0L) {
+                    for (StreamerInfo streamer : pollTargets()) {
+                        scheduler.ensureScheduled(streamer.mcKey);
                     }
                 }
-                if (twitchApiService != null) {
-                    String limit = twitchApiService.getLastRateLimitLimit();
-                    String remaining = twitchApiService.getLastRateLimitRemaining();
-                    String reset = twitchApiService.getLastRateLimitReset();
-                    if (limit != null && !limit.isEmpty() && remaining != null && !remaining.isEmpty()) {
-                        getLogger().info("[TWITCH] Период проверки API: осталось " + remaining + " из " + limit + " запросов" + (reset != null && !reset.isEmpty() ? (" (reset=" + reset + ")") : ""));
+                java.util.List<StreamerInfo> due = new java.util.ArrayList<>();
+                for (String key : scheduler.advance()) {
+                    StreamerInfo streamer = pollTarget(key);
+                    if (streamer != null) {
+                        due.add(streamer);
+                    } else {
+                        scheduler.onQuit(key);
                     }
                 }
+                checkStreamers(due);
+                if (tick[0] % ticksPerMinute == 0L) {
+                    logCheckerStats();
+                }
+                tick[0]++;
+                metrics.observeSince("twitch_task_duration_ms", twitch.service.MetricsRegistry.TASK_DURATION_BUCKETS_MS, start, "task", "checker");
             },
             1L,
-            checkPeriod
+            tickPeriod
         );
     }
 
+    // Вход стримера: первая проверка вскоре после входа
+    public void onStreamerJoined(StreamerInfo streamer) {
+        // вернулся после перезапуска, пока стрим идёт: статус подтвердит обычная проверка
+        if (liveSnapshot != null && liveSnapshot.take(streamer.twitchKey)) {
+            streamerManager.restoreLive(streamer);
+        }
+        twitch.service.PollScheduler scheduler = pollScheduler;
+        if (scheduler != null) {
+            scheduler.onJoined(streamer.mcKey);
+        }
+    }
+
+    public void onStreamerQuit(StreamerInfo streamer) {
+        twitch.service.PollScheduler scheduler = pollScheduler;
+        if (scheduler != null) {
+            scheduler.onQuit(streamer.mcKey);
+        }
+    }
+
+    private void checkStreamers(java.util.List<StreamerInfo> streamers) {
+        if (streamers.isEmpty()) {
+            return;
+        }
+        if (config.getBoolean("twitch.batch_check", true)) {
+            checkTwitchStreamsBatch(streamers);
+        } else {
+            for (StreamerInfo streamer : streamers) {
+                checkTwitchStream(streamer);
+            }
+        }
+    }
+
+    // синхронизация подписок EventSub и статистика лимитов
+    private void logCheckerStats() {
+        if (eventSubClient != null) {
+            eventSubClient.syncUserIds(rosterUserIds());
+        }
+        if (twitchApiService != null) {
+            int queued = twitchApiService.getRequestScheduler().getQueueSize();
+            if (queued > 0) {
+                getLogger().info("[TWITCH] В очереди планировщика запросов: " + queued);
+            }
+            String limit = twitchApiService.getLastRateLimitLimit();
+            String remaining = twitchApiService.getLastRateLimitRemaining();
+            String reset = twitchApiService.getLastRateLimitReset();
+            if (limit != null && !limit.isEmpty() && remaining != null && !remaining.isEmpty()) {
+                getLogger().info("[TWITCH] Период проверки API: осталось " + remaining + " из " + limit + " запросов" + (reset != null && !reset.isEmpty() ? (" (reset=" + reset + ")") : ""));
+            }
+        }
+    }
+
     private static boolean isApiTwitchTvHost(String host) {
         if (host == null) {
             return false;
@@ -237,109 +878,266 @@ public class TwitchStreamPlugin extends JavaPlugin {
     }
 
     private void checkTwitchStream(StreamerInfo streamer) {
-        String streamerKey = streamer.twitchName == null ? "" : streamer.twitchName.toLowerCase();
+        String streamerKey = streamer.twitchKey;
         if (!streamCheckInFlight.add(streamerKey)) {
             return;
         }
-        executorService.submit(() -> {
-            String endpoint = "https://api.twitch.tv/helix/streams?user_login=" + streamer.twitchName;
-            try {
-                String response = twitchApiService.sendGetRequest(endpoint);
-                if (response != null && response.contains("\"error\": \"rate_limit\"")) {
-                    String errorKey = streamer.twitchName.toLowerCase() + ":rate_limit";
-                    long now = System.currentTimeMillis();
-                    synchronized (TwitchStreamPlugin.class) {
-                        if (lastErrorLogTime == null) lastErrorLogTime = new java.util.HashMap<>();
-                        Long last = lastErrorLogTime.get(errorKey);
-                        if (last == null || now - last > 60_000) {
-                            getLogger().warning("[TWITCH API] Превышен лимит запросов к Twitch API (429). Пропускаем обновление статуса для " + streamer.twitchName);
-                            lastErrorLogTime.put(errorKey, now);
-                        }
+        String endpoint = "https://api.twitch.tv/helix/streams?" + streamQueryParam(streamer);
+        if (isAsyncHttp()) {
+            twitchApiService.fetchStreamsAsync(endpoint).whenComplete((result, error) -> {
+                try {
+                    if (error != null) {
+                        handleCheckError(streamerKey, streamer.twitchName, endpoint, error);
+                    } else {
+                        handleStreamResponse(streamer, streamerKey, endpoint, result);
                     }
-                    return;
+                } finally {
+                    streamCheckInFlight.remove(streamerKey);
                 }
+            });
+            return;
+        }
+        boolean submitted = submitCheck(streamerKey, () -> {
+            try {
+                handleStreamResponse(streamer, streamerKey, endpoint, twitchApiService.fetchStreams(endpoint));
+            } finally {
+                streamCheckInFlight.remove(streamerKey);
+            }
+        });
+        if (!submitted) {
+            streamCheckInFlight.remove(streamerKey);
+        }
+    }
 
-                boolean isLive = response.contains("\"type\":\"live\"");
-                boolean wasLive = streamerManager.getStreamerLiveStatus().getOrDefault(streamer.twitchName.toLowerCase(), false);
-
-                streamerManager.getStreamerLiveStatus().put(streamer.twitchName.toLowerCase(), isLive);
-                if (isLive && !wasLive) {
-                    getLogger().info("Стрим начался для " + streamer.mcName + " (Twitch: " + streamer.twitchName + ")");
-                    getServer().getGlobalRegionScheduler().execute(this, () -> {
-                        org.bukkit.entity.Player streamerPlayer = org.bukkit.Bukkit.getPlayerExact(streamer.mcName);
-                        if (streamerPlayer != null) {
-                            String streamMsg = getMessage("stream_start_broadcast", streamer.mcName, streamer.url, streamer.twitchName);
-                            String streamMsgWithoutUrl = streamMsg.replace(streamer.url, "").trim();
-                            net.md_5.bungee.api.chat.TextComponent link = new net.md_5.bungee.api.chat.TextComponent(streamer.url);
-                            link.setColor(net.md_5.bungee.api.ChatColor.BLUE);
-                            link.setUnderlined(true);
-                            link.setClickEvent(new net.md_5.bungee.api.chat.ClickEvent(net.md_5.bungee.api.chat.ClickEvent.Action.OPEN_URL, streamer.url));
-                            for (org.bukkit.entity.Player p : org.bukkit.Bukkit.getOnlinePlayers()) {
-                                org.bukkit.Bukkit.getRegionScheduler().run(this, p.getLocation(), task -> {
-                                    if (!streamMsgWithoutUrl.isEmpty()) {
-                                        p.sendMessage(streamMsgWithoutUrl);
-                                    }
-                                    p.spigot().sendMessage(link);
-                                });
-                            }
-                            // префикс через LuckPerms
-                            LuckPerms luckPerms = getLuckPerms();
-                            if (luckPerms != null) {
-                                java.util.UUID uuid = streamerPlayer.getUniqueId();
-                                luckPerms.getUserManager().loadUser(uuid).thenAcceptAsync(user -> {
-                                    user.data().add(net.luckperms.api.node.types.InheritanceNode.builder(getTwitchGroup()).build());
-                                    luckPerms.getUserManager().saveUser(user);
-                                });
-                            }
-                        }
-                    });
-                } else if (!isLive && wasLive) {
-                    getLogger().info("Стрим завершён для " + streamer.mcName + " (Twitch: " + streamer.twitchName + ")");
-                    getServer().getGlobalRegionScheduler().execute(this, () -> {
-                        LuckPerms luckPerms = getLuckPerms();
-                        if (luckPerms != null) {
-                            org.bukkit.entity.Player player = org.bukkit.Bukkit.getPlayerExact(streamer.mcName);
-                            if (player != null) {
-                                java.util.UUID uuid = player.getUniqueId();
-                                luckPerms.getUserManager().loadUser(uuid).thenAcceptAsync(user ->
-                                {
-                                    user.data().clear(node -> node instanceof net.luckperms.api.node.types.InheritanceNode &&
-                                            ((net.luckperms.api.node.types.InheritanceNode) node).getGroupName().equalsIgnoreCase(getTwitchGroup()));
-                                    luckPerms.getUserManager().saveUser(user);
-                                });
-                            }
-                        }
-                    });
-                }
-            } catch (Exception e) {
-                String type = classifyNetworkProblem(e);
-                Throwable root = e;
-                while (root.getCause() != null) {
-                    root = root.getCause();
+    private void handleStreamResponse(StreamerInfo streamer, String streamerKey, String endpoint, HelixStreamsResult result) {
+        if (!checkResultUsable(streamerKey, streamer.twitchName, endpoint, result)) {
+            return;
+        }
+        detectRenames(result);
+        boolean isLive = isLiveIn(streamer, result.liveUserIds(), result.liveLogins());
+        // ответ приходит в потоке HTTP-клиента: пока шёл запрос, игрок мог выйти
+        getServer().getGlobalRegionScheduler().execute(this, () -> {
+            if (isTracked(streamer)) {
+                applyLiveStatus(streamer, isLive);
+            }
+        });
+    }
+
+    // Ошибки и 429 не меняют статус стримеров — пропускаем обновление до следующей проверки
+    private boolean checkResultUsable(String key, String target, String endpoint, HelixStreamsResult result) {
+        switch (result.status) {
+            case OK -> {
+                return true;
+            }
+            case RATE_LIMIT -> logRateLimitSkip(key, target);
+            case EXCEPTION -> handleCheckError(key, target, endpoint, result.error);
+            default -> {
+                // auth/http ошибки уже залогированы в TwitchApiService
+            }
+        }
+        return false;
+    }
+
+    // Проверка по запросу игрока: идёт впереди фоновых проверок; null — статус получить не удалось
+    // Статус из кеша, если он свежее status_cache_ttl_ms; иначе один общий запрос на логин
+    public java.util.concurrent.CompletableFuture<Boolean> checkStreamNow(StreamerInfo streamer) {
+        return statusCache.get(streamer.twitchKey, login -> fetchStreamStatus(streamer));
+    }
+
+    private java.util.concurrent.CompletableFuture<Boolean> fetchStreamStatus(StreamerInfo streamer) {
+        String streamerKey = streamer.twitchKey;
+        String endpoint = "https://api.twitch.tv/helix/streams?" + streamQueryParam(streamer);
+        return twitchApiService.fetchStreamsAsync(endpoint, RequestScheduler.Priority.HIGH).thenApply(result -> {
+            if (!checkResultUsable(streamerKey, streamer.twitchName, endpoint, result)) {
+                return null;
+            }
+            detectRenames(result);
+            boolean isLive = isLiveIn(streamer, result.liveUserIds(), result.liveLogins());
+            getServer().getGlobalRegionScheduler().execute(this, () -> {
+                if (isTracked(streamer)) {
+                    applyLiveStatus(streamer, isLive);
                 }
-                String msg = root.getMessage() != null ? root.getMessage() : root.toString();
-
-                if (isTemporaryNetworkError(type, endpoint)) {
-                    String errorKey = streamer.twitchName.toLowerCase() + ":" + type;
-                    long now = System.currentTimeMillis();
-                    synchronized (TwitchStreamPlugin.class) {
-                        if (lastErrorLogTime == null) lastErrorLogTime = new java.util.HashMap<>();
-                        Long last = lastErrorLogTime.get(errorKey);
-                        if (last == null || now - last > 60_000) {
-                            logApiTwitchTvConnectionProblem(endpoint, e);
-                            lastErrorLogTime.put(errorKey, now);
-                        }
+            });
+            return isLive;
+        });
+    }
+
+    // Пакетная проверка: один запрос /helix/streams на каждые 100 стримеров
+    private void checkTwitchStreamsBatch(java.util.List<StreamerInfo> streamers) {
+        java.util.List<StreamerInfo> batch = new java.util.ArrayList<>(HELIX_BATCH_SIZE);
+        for (StreamerInfo streamer : streamers) {
+            String streamerKey = streamer.twitchKey;
+            if (streamerKey.isEmpty() || !streamCheckInFlight.add(streamerKey)) {
+                continue;
+            }
+            batch.add(streamer);
+            if (batch.size() == HELIX_BATCH_SIZE) {
+                submitStreamBatch(batch);
+                batch = new java.util.ArrayList<>(HELIX_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            submitStreamBatch(batch);
+        }
+    }
+
+    private void submitStreamBatch(java.util.List<StreamerInfo> batch) {
+        StringBuilder endpointBuilder = new StringBuilder("https://api.twitch.tv/helix/streams?first=").append(HELIX_BATCH_SIZE);
+        for (StreamerInfo streamer : batch) {
+            endpointBuilder.append('&').append(streamQueryParam(streamer));
+        }
+        String endpoint = endpointBuilder.toString();
+        String batchKey = "batch:" + batch.get(0).twitchKey;
+        Runnable release = () -> {
+            for (StreamerInfo streamer : batch) {
+                streamCheckInFlight.remove(streamer.twitchKey);
+            }
+        };
+        if (isAsyncHttp()) {
+            twitchApiService.fetchStreamsAsync(endpoint).whenComplete((result, error) -> {
+                try {
+                    if (error != null) {
+                        handleCheckError(batchKey, batch.size() + " стримеров", endpoint, error);
+                    } else {
+                        handleBatchResponse(batch, batchKey, endpoint, result);
                     }
-                    return;
-                } else {
-                    java.io.StringWriter sw = new java.io.StringWriter();
-                    e.printStackTrace(new java.io.PrintWriter(sw));
-                    getLogger().warning("Ошибка при проверке Twitch для " + streamer.twitchName + ": " + sw.toString());
+                } finally {
+                    release.run();
                 }
+            });
+            return;
+        }
+        boolean submitted = submitCheck(batchKey, () -> {
+            try {
+                handleBatchResponse(batch, batchKey, endpoint, twitchApiService.fetchStreams(endpoint));
             } finally {
-                streamCheckInFlight.remove(streamerKey);
+                release.run();
             }
         });
+        if (!submitted) {
+            release.run();
+        }
+    }
+
+    // Очередь пула заполнена — проверка пропускается до следующего цикла, потоки не множатся
+    private boolean submitCheck(String key, Runnable task) {
+        try {
+            executorService.execute(task);
+            return true;
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            metrics.increment("twitch_check_rejected_total");
+            long now = System.currentTimeMillis();
+            synchronized (TwitchStreamPlugin.class) {
+                if (lastErrorLogTime == null) lastErrorLogTime = new java.util.HashMap<>();
+                Long last = lastErrorLogTime.get("executor:rejected");
+                if (last == null || now - last > 60_000) {
+                    getLogger().warning("[TWITCH API] Очередь проверок переполнена, проверка пропущена: " + key);
+                    lastErrorLogTime.put("executor:rejected", now);
+                }
+            }
+            return false;
+        }
+    }
+
+    private void handleBatchResponse(java.util.List<StreamerInfo> batch, String batchKey, String endpoint, HelixStreamsResult result) {
+        if (!checkResultUsable(batchKey, batch.size() + " стримеров", endpoint, result)) {
+            return;
+        }
+
+        detectRenames(result);
+        java.util.Set<String> liveUserIds = result.liveUserIds();
+        java.util.Set<String> liveLogins = result.liveLogins();
+        getServer().getGlobalRegionScheduler().execute(this, () -> {
+            for (StreamerInfo streamer : batch) {
+                if (isTracked(streamer)) {
+                    applyLiveStatus(streamer, isLiveIn(streamer, liveUserIds, liveLogins));
+                }
+            }
+        });
+    }
+
+    private boolean isAsyncHttp() {
+        return config.getBoolean("twitch.http.async", true);
+    }
+
+    private void logRateLimitSkip(String key, String target) {
+        metrics.increment("twitch_check_errors_total", "type", "rate_limit");
+        String errorKey = key + ":rate_limit";
+        long now = System.currentTimeMillis();
+        synchronized (TwitchStreamPlugin.class) {
+            if (lastErrorLogTime == null) lastErrorLogTime = new java.util.HashMap<>();
+            Long last = lastErrorLogTime.get(errorKey);
+            if (last == null || now - last > 60_000) {
+                getLogger().warning("[TWITCH API] Превышен лимит запросов к Twitch API (429). Пропускаем обновление статуса для " + target);
+                lastErrorLogTime.put(errorKey, now);
+            }
+        }
+    }
+
+    private void handleCheckError(String key, String target, String endpoint, Throwable e) {
+        String type = classifyNetworkProblem(e);
+        metrics.increment("twitch_check_errors_total", "type", type);
+        if (isTemporaryNetworkError(type, endpoint)) {
+            String errorKey = key + ":" + type;
+            long now = System.currentTimeMillis();
+            synchronized (TwitchStreamPlugin.class) {
+                if (lastErrorLogTime == null) lastErrorLogTime = new java.util.HashMap<>();
+                Long last = lastErrorLogTime.get(errorKey);
+                if (last == null || now - last > 60_000) {
+                    logApiTwitchTvConnectionProblem(endpoint, e);
+                    lastErrorLogTime.put(errorKey, now);
+                }
+            }
+        } else {
+            java.io.StringWriter sw = new java.io.StringWriter();
+            e.printStackTrace(new java.io.PrintWriter(sw));
+            getLogger().warning("Ошибка при проверке Twitch для " + target + ": " + sw.toString());
+        }
+    }
+
+    // Переходы старт/стоп стрима по результату проверки
+    private void applyLiveStatus(StreamerInfo streamer, boolean isLive) {
+        twitch.service.ClusterCoordinator c = cluster;
+        if (c != null && c.isLeader()) {
+            c.recordStatus(streamer.twitchKey, isLive);
+            if (streamerManager.getOnlineStreamer(streamer.mcKey) == null && c.isClusterOnline(streamer.mcKey)) {
+                // стример на другом сервере: переход применит его узел
+                statusCache.record(streamer.twitchKey, isLive);
+                twitch.service.PollScheduler scheduler = pollScheduler;
+                if (scheduler != null) {
+                    scheduler.onResult(streamer.mcKey, isLive);
+                }
+                return;
+            }
+        }
+        boolean wasLive = streamerManager.setLive(streamer, isLive);
+        statusCache.record(streamer.twitchKey, isLive);
+        twitch.service.PollScheduler scheduler = pollScheduler;
+        if (scheduler != null) {
+            scheduler.onResult(streamer.mcKey, isLive);
+        }
+        if (isLive && !wasLive) {
+            metrics.increment("twitch_live_transitions_total", "direction", "start");
+            getLogger().info("Стрим начался для " + streamer.mcName + " (Twitch: " + streamer.twitchName + ")");
+            getServer().getGlobalRegionScheduler().execute(this, () -> {
+                org.bukkit.entity.Player streamerPlayer = org.bukkit.Bukkit.getPlayerExact(streamer.mcName);
+                if (streamerPlayer != null) {
+                    // ссылка в шаблоне уже кликабельна
+                    broadcastDispatcher.broadcast(messageTemplates.get("stream_start_broadcast").render(streamer));
+                    // префикс через LuckPerms
+                    groupSyncService.request(streamerPlayer.getUniqueId(), true);
+                }
+            });
+        } else if (!isLive && wasLive) {
+            metrics.increment("twitch_live_transitions_total", "direction", "stop");
+            getLogger().info("Стрим завершён для " + streamer.mcName + " (Twitch: " + streamer.twitchName + ")");
+            getServer().getGlobalRegionScheduler().execute(this, () -> {
+                org.bukkit.entity.Player player = org.bukkit.Bukkit.getPlayerExact(streamer.mcName);
+                if (player != null) {
+                    groupSyncService.request(player.getUniqueId(), false);
+                }
+            });
+        }
     }
 
     private boolean isTemporaryNetworkError(String type, String endpoint) {
@@ -364,8 +1162,45 @@ public class TwitchStreamPlugin extends JavaPlugin {
     
     @Override
     public void onDisable() {
+        saveLiveSnapshot();
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
         if (executorService != null) {
-            executorService.shutdownNow();
+            // даём текущим проверкам завершиться, но не дольше дедлайна
+            long timeoutMs = config.getLong("twitch.executor.shutdown_timeout_ms", 5000L);
+            if (!twitch.service.CheckExecutors.shutdown(executorService, timeoutMs)) {
+                getLogger().warning("[TWITCH] Проверки стримов не завершились за " + timeoutMs + " мс и были прерваны");
+            }
+        }
+        if (eventSubClient != null) {
+            eventSubClient.stop();
+        }
+        if (cluster != null) {
+            cluster.shutdown();
+        }
+        if (twitchApiService != null) {
+            twitchApiService.shutdown();
+        }
+        if (groupSyncService != null) {
+            groupSyncService.shutdown(5000L);
+        }
+        if (profileCache != null) {
+            profileCache.shutdown();
+        }
+        if (streamerManager != null) {
+            streamerManager.shutdown();
+        }
+        if (storageExecutor != null) {
+            // дожидаемся финальной записи ростера и закрытия хранилища
+            storageExecutor.shutdown();
+            try {
+                if (!storageExecutor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS)) {
+                    getLogger().warning("[TWITCH] Сохранение ростера не завершилось за 10 секунд");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
         if (announceTask != null) {
             announceTask.cancel();
@@ -373,13 +1208,18 @@ public class TwitchStreamPlugin extends JavaPlugin {
         if (streamCheckerTask != null) {
             streamCheckerTask.cancel();
         }
+        if (userIdTask != null) {
+            userIdTask.cancel();
+        }
         getLogger().info("[TWITCH] Плагин успешно выгружен.");
     }
     
     public String getMessage(String key, String player, String link, String desc) {
-        String msg = config.getString("messages." + key, "");
-        msg = msg.replace("{player}", player).replace("{link}", link).replace("{desc}", desc);
-        return ChatColor.translateAlternateColorCodes('&', msg);
+        return messageTemplates.get(key).renderLegacy(player, link, desc);
+    }
+
+    public twitch.service.GroupSyncService getGroupSyncService() {
+        return groupSyncService;
     }
 
     public LuckPerms getLuckPerms() {
@@ -0,0 +1,177 @@
+package twitch.command;
+
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.meta.SkullMeta;
+import org.bukkit.persistence.PersistentDataType;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+
+import twitch.model.StreamerInfo;
+import twitch.service.SkullProfileCache;
+import twitch.service.StreamerManager;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Готовые страницы меню стримеров.
+   Собираются один раз на версию ростера/статусов эфира или кеша профилей; голова пересоздаётся только
+   для изменившейся записи или когда у её игрока появился (сменился) профиль.
+   Кешированные предметы наружу не отдаются — в инвентарь кладутся их копии */
+final class StreamerMenuPages {
+    static final int PER_PAGE = 45;
+
+    private final StreamerManager streamerManager;
+    private final SkullProfileCache profiles;
+    private final NamespacedKey streamerUrlKey;
+    private final NamespacedKey streamerTwitchKey;
+    private final ItemStack prevButton;
+    private final ItemStack nextButton;
+
+    private volatile Pages pages = new Pages(-1L, -1L, new ItemStack[0][]);
+    // головы по записи ростера (записи неизменяемы, новая версия записи — новый объект)
+    private Map<StreamerInfo, Head> offlineHeads = new IdentityHashMap<>();
+    private Map<StreamerInfo, Head> liveHeads = new IdentityHashMap<>();
+
+    private static final class Head {
+        final ItemStack item;
+        final long profileStamp; // -1 — заглушка без профиля
+
+        Head(ItemStack item, long profileStamp) {
+            this.item = item;
+            this.profileStamp = profileStamp;
+        }
+    }
+
+    private static final class Pages {
+        final long version;
+        final long profileVersion;
+        final ItemStack[][] items;
+
+        Pages(long version, long profileVersion, ItemStack[][] items) {
+            this.version = version;
+            this.profileVersion = profileVersion;
+            this.items = items;
+        }
+    }
+
+    StreamerMenuPages(StreamerManager streamerManager, SkullProfileCache profiles, NamespacedKey streamerUrlKey,
+                      NamespacedKey streamerTwitchKey, NamespacedKey menuActionKey) {
+        this.streamerManager = streamerManager;
+        this.profiles = profiles;
+        this.streamerUrlKey = streamerUrlKey;
+        this.streamerTwitchKey = streamerTwitchKey;
+        this.prevButton = button("§aПредыдущая страница", "prev", menuActionKey);
+        this.nextButton = button("§aСледующая страница", "next", menuActionKey);
+    }
+
+    private static ItemStack button(String name, String action, NamespacedKey menuActionKey) {
+        ItemStack item = new ItemStack(Material.ARROW);
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(name);
+            meta.getPersistentDataContainer().set(menuActionKey, PersistentDataType.STRING, action);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    ItemStack prevButton() {
+        return prevButton.clone();
+    }
+
+    ItemStack nextButton() {
+        return nextButton.clone();
+    }
+
+    int pageCount() {
+        return Math.max(1, current().items.length);
+    }
+
+    // Предметы страницы; элементы массива не изменять — это общий кеш
+    ItemStack[] page(int page) {
+        ItemStack[][] items = current().items;
+        return page >= 0 && page < items.length ? items[page] : new ItemStack[0];
+    }
+
+    private Pages current() {
+        Pages cached = pages;
+        long version = streamerManager.getVersion();
+        long profileVersion = profiles.getVersion();
+        if (cached.version == version && cached.profileVersion == profileVersion) {
+            return cached;
+        }
+        return rebuild(version, profileVersion);
+    }
+
+    private synchronized Pages rebuild(long version, long profileVersion) {
+        Pages cached = pages;
+        if (cached.version == version && cached.profileVersion == profileVersion) {
+            return cached;
+        }
+        // сначала в эфире, затем остальные; внутри групп — порядок ростера
+        List<StreamerInfo> live = new ArrayList<>();
+        List<StreamerInfo> offline = new ArrayList<>();
+        for (StreamerInfo s : streamerManager.getStreamers()) {
+            (streamerManager.isLive(s) ? live : offline).add(s);
+        }
+        Map<StreamerInfo, Head> nextOffline = new IdentityHashMap<>();
+        Map<StreamerInfo, Head> nextLive = new IdentityHashMap<>();
+        List<ItemStack> ordered = new ArrayList<>(live.size() + offline.size());
+        for (StreamerInfo s : live) {
+            ordered.add(head(s, true, liveHeads, nextLive));
+        }
+        for (StreamerInfo s : offline) {
+            ordered.add(head(s, false, offlineHeads, nextOffline));
+        }
+        offlineHeads = nextOffline;
+        liveHeads = nextLive;
+
+        int pageCount = (ordered.size() + PER_PAGE - 1) / PER_PAGE;
+        ItemStack[][] items = new ItemStack[pageCount][];
+        for (int p = 0; p < pageCount; p++) {
+            int start = p * PER_PAGE;
+            items[p] = ordered.subList(start, Math.min(start + PER_PAGE, ordered.size())).toArray(new ItemStack[0]);
+        }
+        Pages built = new Pages(version, profileVersion, items);
+        pages = built;
+        return built;
+    }
+
+    private ItemStack head(StreamerInfo s, boolean live, Map<StreamerInfo, Head> previous, Map<StreamerInfo, Head> next) {
+        Head head = previous.get(s);
+        // профиль только из кеша; если его нет — заглушка, профиль разрешается в фоне
+        long stamp = profiles.stamp(s.mcName);
+        if (head == null || head.profileStamp != stamp) {
+            head = new Head(buildHead(s, live, stamp >= 0L ? profiles.get(s.mcName) : null), stamp);
+        }
+        next.put(s, head);
+        return head.item;
+    }
+
+    private ItemStack buildHead(StreamerInfo s, boolean live, PlayerProfile profile) {
+        ItemStack head = new ItemStack(Material.PLAYER_HEAD);
+        ItemMeta rawMeta = head.getItemMeta();
+        if (rawMeta instanceof SkullMeta meta) {
+            if (profile != null) {
+                meta.setPlayerProfile(profile);
+            }
+            meta.setDisplayName(live ? "§c● §d" + s.twitchName : "§d" + s.twitchName);
+            List<String> lore = new ArrayList<>(3);
+            if (live) {
+                lore.add("§cВ ЭФИРЕ");
+            }
+            lore.add("§7" + s.mcName);
+            lore.add("§eПерейти на страницу Twitch");
+            meta.setLore(lore);
+            meta.getPersistentDataContainer().set(streamerUrlKey, PersistentDataType.STRING, s.url);
+            meta.getPersistentDataContainer().set(streamerTwitchKey, PersistentDataType.STRING, s.twitchName);
+            head.setItemMeta(meta);
+        }
+        return head;
+    }
+}
@@ -0,0 +1,90 @@
+package twitch.command;
+
+import twitch.model.StreamerInfo;
+import twitch.service.StreamerManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/* Префиксный индекс MC-ников и Twitch-логинов для автодополнения.
+   При смене снимка ростера в индекс вносится только разница с прошлым снимком;
+   запрос — срез skip-листа по префиксу, без обхода всего ростера */
+final class StreamerNameIndex {
+    static final int MAX_SUGGESTIONS = 50;
+
+    private final StreamerManager streamerManager;
+    // нормализованное имя + \0 + тип + id -> имя для подсказки; ключ уникален даже при совпадении имён
+    private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<>();
+    private volatile List<StreamerInfo> indexed = Collections.emptyList();
+    private Set<StreamerInfo> present = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    StreamerNameIndex(StreamerManager streamerManager) {
+        this.streamerManager = streamerManager;
+    }
+
+    // снимок ростера неизменяем: та же ссылка — те же записи
+    private void sync() {
+        List<StreamerInfo> current = streamerManager.getStreamers();
+        if (current == indexed) {
+            return;
+        }
+        synchronized (this) {
+            current = streamerManager.getStreamers();
+            if (current == indexed) {
+                return;
+            }
+            Set<StreamerInfo> next = Collections.newSetFromMap(new IdentityHashMap<>(current.size() * 2));
+            next.addAll(current);
+            for (StreamerInfo s : present) {
+                if (!next.contains(s)) {
+                    names.remove(key(s.mcKey, 'm', s));
+                    names.remove(key(s.twitchKey, 't', s));
+                }
+            }
+            for (StreamerInfo s : current) {
+                if (!present.contains(s)) {
+                    names.put(key(s.mcKey, 'm', s), s.mcName);
+                    names.put(key(s.twitchKey, 't', s), s.twitchName);
+                }
+            }
+            present = next;
+            indexed = current;
+        }
+    }
+
+    private static String key(String normalized, char type, StreamerInfo s) {
+        return normalized + '\0' + type + s.id;
+    }
+
+    // Имена по префиксу; при liveFirst сначала стримеры в эфире (их ищем среди онлайн-стримеров — их немного)
+    List<String> complete(String prefix, boolean liveFirst) {
+        sync();
+        String from = StreamerInfo.normalize(prefix);
+        Set<String> result = new LinkedHashSet<>();
+        if (liveFirst) {
+            for (StreamerInfo s : streamerManager.getOnlineStreamers()) {
+                if (streamerManager.isLive(s)) {
+                    if (s.mcKey.startsWith(from)) {
+                        result.add(s.mcName);
+                    }
+                    if (s.twitchKey.startsWith(from)) {
+                        result.add(s.twitchName);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, String> e : names.tailMap(from).entrySet()) {
+            if (result.size() >= MAX_SUGGESTIONS || !e.getKey().startsWith(from)) {
+                break;
+            }
+            result.add(e.getValue());
+        }
+        return new ArrayList<>(result);
+    }
+}
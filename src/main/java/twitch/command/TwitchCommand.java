@@ -3,16 +3,17 @@ package twitch.command;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.inventory.meta.SkullMeta;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.persistence.PersistentDataType;
@@ -30,11 +31,9 @@ import twitch.service.StreamerManager;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
 
 /* Команда /стрим и обработка событий входа */
-public class TwitchCommand implements CommandExecutor, Listener {
+public class TwitchCommand implements CommandExecutor, TabCompleter, Listener {
     private final TwitchStreamPlugin plugin;
     private final StreamerManager streamerManager;
 
@@ -42,6 +41,11 @@ public class TwitchCommand implements CommandExecutor, Listener {
     private final NamespacedKey streamerUrlKey;
     private final NamespacedKey streamerTwitchKey;
     private final NamespacedKey menuActionKey;
+    private final StreamerMenuPages menuPages;
+    private final StreamerNameIndex nameIndex;
+
+    private static final List<String> SUBCOMMANDS = List.of("список", "онлайн", "статус", "стоп");
+    private static final List<String> ADMIN_SUBCOMMANDS = List.of("добавить", "удалить", "reload", "метрики");
 
     public TwitchCommand(TwitchStreamPlugin plugin, StreamerManager streamerManager) {
         this.plugin = plugin;
@@ -49,6 +53,8 @@ public class TwitchCommand implements CommandExecutor, Listener {
         this.streamerUrlKey = new NamespacedKey(plugin, "streamer_url");
         this.streamerTwitchKey = new NamespacedKey(plugin, "streamer_twitch");
         this.menuActionKey = new NamespacedKey(plugin, "menu_action");
+        this.nameIndex = new StreamerNameIndex(streamerManager);
+        this.menuPages = new StreamerMenuPages(streamerManager, plugin.getProfileCache(), streamerUrlKey, streamerTwitchKey, menuActionKey);
         org.bukkit.Bukkit.getPluginManager().registerEvents(this, plugin);
     }
 
@@ -65,13 +71,9 @@ public class TwitchCommand implements CommandExecutor, Listener {
         }
     }
 
+    // Страницы берутся из кеша; при листании предметы только копируются
     private void openStreamerListMenu(Player player, int page) {
-        List<StreamerInfo> snapshot;
-        synchronized (streamerManager.getStreamers()) {
-            snapshot = new ArrayList<>(streamerManager.getStreamers());
-        }
-        int perPage = 45;
-        int totalPages = Math.max(1, (int) Math.ceil(snapshot.size() / (double) perPage));
+        int totalPages = menuPages.pageCount();
         int safePage = Math.min(Math.max(page, 0), totalPages - 1);
 
         Inventory inv = org.bukkit.Bukkit.createInventory(
@@ -80,51 +82,54 @@ public class TwitchCommand implements CommandExecutor, Listener {
                 STREAMER_MENU_TITLE_PREFIX + " §7(" + (safePage + 1) + "/" + totalPages + ")"
         );
 
-        int start = safePage * perPage;
-        int end = Math.min(start + perPage, snapshot.size());
-        for (int i = start; i < end; i++) {
-            StreamerInfo s = snapshot.get(i);
-            ItemStack head = new ItemStack(Material.PLAYER_HEAD);
-            ItemMeta rawMeta = head.getItemMeta();
-            if (rawMeta instanceof SkullMeta meta) {
-                meta.setOwningPlayer(org.bukkit.Bukkit.getOfflinePlayer(s.mcName));
-                meta.setDisplayName("§d" + s.twitchName);
-                meta.setLore(java.util.List.of(
-                        "§7" + s.mcName,
-                        "§eПерейти на страницу Twitch"
-                ));
-                meta.getPersistentDataContainer().set(streamerUrlKey, PersistentDataType.STRING, s.url);
-                meta.getPersistentDataContainer().set(streamerTwitchKey, PersistentDataType.STRING, s.twitchName);
-                head.setItemMeta(meta);
-            }
-            inv.setItem(i - start, head);
+        ItemStack[] items = menuPages.page(safePage);
+        for (int i = 0; i < items.length; i++) {
+            inv.setItem(i, items[i].clone());
         }
 
         if (safePage > 0) {
-            ItemStack prev = new ItemStack(Material.ARROW);
-            ItemMeta meta = prev.getItemMeta();
-            if (meta != null) {
-                meta.setDisplayName("§aПредыдущая страница");
-                meta.getPersistentDataContainer().set(menuActionKey, PersistentDataType.STRING, "prev");
-                prev.setItemMeta(meta);
-            }
-            inv.setItem(45, prev);
+            inv.setItem(45, menuPages.prevButton());
         }
 
         if (safePage < totalPages - 1) {
-            ItemStack next = new ItemStack(Material.ARROW);
-            ItemMeta meta = next.getItemMeta();
-            if (meta != null) {
-                meta.setDisplayName("§aСледующая страница");
-                meta.getPersistentDataContainer().set(menuActionKey, PersistentDataType.STRING, "next");
-                next.setItemMeta(meta);
-            }
-            inv.setItem(53, next);
+            inv.setItem(53, menuPages.nextButton());
         }
 
         player.openInventory(inv);
     }
 
+    // Автодополнение: подкоманды и имена из префиксного индекса, без обхода ростера
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        boolean liveFirst = plugin.getConfig().getBoolean("twitch.tab_complete.live_first", true);
+        if (args.length == 1) {
+            String prefix = args[0].toLowerCase();
+            List<String> result = new ArrayList<>();
+            for (String sub : SUBCOMMANDS) {
+                if (sub.startsWith(prefix)) {
+                    result.add(sub);
+                }
+            }
+            if (sender.isOp() || sender.hasPermission("twitch.stream.admin")) {
+                for (String sub : ADMIN_SUBCOMMANDS) {
+                    if (sub.startsWith(prefix)) {
+                        result.add(sub);
+                    }
+                }
+            }
+            // /стрим <ник>
+            result.addAll(nameIndex.complete(args[0], liveFirst));
+            return result;
+        }
+        if (args.length == 2) {
+            String action = args[0].toLowerCase();
+            if (action.equals("статус") || (action.equals("удалить") && (sender.isOp() || sender.hasPermission("twitch.stream.admin")))) {
+                return nameIndex.complete(args[1], liveFirst);
+            }
+        }
+        return java.util.Collections.emptyList();
+    }
+
     // Обработка команды /стрим
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
@@ -161,15 +166,12 @@ public class TwitchCommand implements CommandExecutor, Listener {
                     sender.sendMessage("§cОшибка: ник Twitch в поле и в ссылке не совпадают. Проверьте ввод.");
                     yield true;
                 }
-                boolean exists = streamerManager.getStreamers().stream().anyMatch(s ->
-                        s.mcName.equalsIgnoreCase(mcName) ||
-                                s.twitchName.equalsIgnoreCase(twitchName) ||
-                                s.url.equalsIgnoreCase(url));
-                if (exists) {
+                if (streamerManager.exists(mcName, twitchName, url)) {
                     sender.sendMessage("§cСтример с таким ником, Twitch-ником или ссылкой уже есть в списке.");
                     yield true;
                 }
                 streamerManager.addStreamer(mcName, twitchName, url, "");
+                plugin.resolveUserIds();
                 sender.sendMessage(plugin.getMessage("streamer_added", mcName, url, twitchName));
                 yield true;
             }
@@ -197,19 +199,10 @@ public class TwitchCommand implements CommandExecutor, Listener {
                     player.sendMessage(plugin.getMessage("no_permission"));
                     yield true;
                 }
-                LuckPerms luckPerms = plugin.getLuckPerms();
-                if (luckPerms != null) {
-                    luckPerms.getUserManager().loadUser(player.getUniqueId()).thenAcceptAsync(user -> {
-                        user.data().clear(node -> node instanceof InheritanceNode &&
-                                ((InheritanceNode) node).getGroupName().equalsIgnoreCase(plugin.getTwitchGroup()));
-                        luckPerms.getUserManager().saveUser(user);
-                    });
-                }
-                StreamerInfo me = streamerManager.getStreamers().stream()
-                        .filter(s -> s.mcName.equalsIgnoreCase(player.getName()))
-                        .findFirst().orElse(null);
+                plugin.getGroupSyncService().request(player.getUniqueId(), false);
+                StreamerInfo me = streamerManager.findByMcName(player.getName());
                 if (me != null) {
-                    streamerManager.getStreamerLiveStatus().put(me.twitchName.toLowerCase(), false);
+                    streamerManager.setLive(me, false);
                 }
                 player.sendMessage("§aВы остановили стрим. Группа снята.");
                 yield true;
@@ -226,14 +219,10 @@ public class TwitchCommand implements CommandExecutor, Listener {
                 yield true;
             }
             case "онлайн" -> {
-                Map<String, Boolean> liveStatus = streamerManager.getStreamerLiveStatus();
                 List<StreamerInfo> liveStreamers = new ArrayList<>();
-                synchronized (streamerManager.getStreamers()) {
-                    for (StreamerInfo s : streamerManager.getStreamers()) {
-                        if (org.bukkit.Bukkit.getPlayerExact(s.mcName) != null &&
-                                liveStatus.getOrDefault(s.twitchName.toLowerCase(), false)) {
-                            liveStreamers.add(s);
-                        }
+                for (StreamerInfo s : streamerManager.getOnlineStreamers()) {
+                    if (streamerManager.isLive(s)) {
+                        liveStreamers.add(s);
                     }
                 }
 
@@ -275,6 +264,17 @@ public class TwitchCommand implements CommandExecutor, Listener {
                 sender.sendMessage(plugin.getMessage("reload_success"));
                 yield true;
             }
+            case "метрики" -> {
+                if (!sender.isOp() && !sender.hasPermission("twitch.stream.admin")) {
+                    sender.sendMessage(plugin.getMessage("no_permission"));
+                    yield true;
+                }
+                sender.sendMessage("§d[СТРИМ] §fМетрики плагина:");
+                for (String line : plugin.getMetrics().summary()) {
+                    sender.sendMessage("§7" + line);
+                }
+                yield true;
+            }
             case "статус" -> {
                 if (!(sender instanceof Player)) {
                     sender.sendMessage(plugin.getMessage("only_player"));
@@ -286,16 +286,18 @@ public class TwitchCommand implements CommandExecutor, Listener {
                     yield true;
                 }
                 String name = args[1];
-                StreamerInfo streamer = streamerManager.getStreamers().stream()
-                        .filter(s -> s.mcName.equalsIgnoreCase(name) || s.twitchName.equalsIgnoreCase(name))
-                        .findFirst().orElse(null);
+                StreamerInfo streamer = streamerManager.findByName(name);
                 if (streamer != null) {
-                    Boolean isLive = streamerManager.getStreamerLiveStatus().get(streamer.twitchName.toLowerCase());
-                    if (Boolean.TRUE.equals(isLive)) {
-                        player.sendMessage(plugin.getMessage("streamer_status_online", streamer.mcName, streamer.twitchName));
-                    } else {
-                        player.sendMessage(plugin.getMessage("streamer_status_offline", streamer.mcName, streamer.twitchName));
-                    }
+                    plugin.checkStreamNow(streamer).whenComplete((checked, error) -> {
+                        boolean isLive = checked != null ? checked : streamerManager.isLive(streamer);
+                        player.getScheduler().run(plugin, task -> {
+                            if (isLive) {
+                                player.sendMessage(plugin.getMessage("streamer_status_online", streamer.mcName, streamer.twitchName));
+                            } else {
+                                player.sendMessage(plugin.getMessage("streamer_status_offline", streamer.mcName, streamer.twitchName));
+                            }
+                        }, null);
+                    });
                 } else {
                     player.sendMessage(plugin.getMessage("streamer_not_found"));
                 }
@@ -317,17 +319,9 @@ public class TwitchCommand implements CommandExecutor, Listener {
                     String desc = args.length > 1 ? String.join(" ", java.util.Arrays.copyOfRange(args, 1, args.length)) : "";
                     String mcName = player.getName();
                     String twitchName = url.replace("https://www.twitch.tv/", "").replace("https://twitch.tv/", "").replaceAll("/", "");
-                    LuckPerms luckPerms = plugin.getLuckPerms();
-                    if (luckPerms != null) {
-                        luckPerms.getUserManager().loadUser(player.getUniqueId()).thenAcceptAsync(user -> {
-                            user.data().add(InheritanceNode.builder(plugin.getTwitchGroup()).build());
-                            luckPerms.getUserManager().saveUser(user);
-                        });
-                    }
-                    String msg = plugin.getMessage("stream_manual_broadcast", mcName, url, desc);
-                    for (org.bukkit.entity.Player p : org.bukkit.Bukkit.getOnlinePlayers()) {
-                        p.sendMessage(msg);
-                    }
+                    plugin.getGroupSyncService().request(player.getUniqueId(), true);
+                    plugin.getBroadcastDispatcher().broadcast(
+                            plugin.getMessageTemplates().get("stream_manual_broadcast").render(mcName, url, desc));
                     yield true;
                 }
                 // Если не ссылка, то показать ссылку на стрим по нику
@@ -337,9 +331,7 @@ public class TwitchCommand implements CommandExecutor, Listener {
                 }
                 Player player = (Player) sender;
                 String searchName = args[0];
-                StreamerInfo streamer = streamerManager.getStreamers().stream()
-                        .filter(s -> s.mcName.equalsIgnoreCase(searchName) || s.twitchName.equalsIgnoreCase(searchName))
-                        .findFirst().orElse(null);
+                StreamerInfo streamer = streamerManager.findByName(searchName);
                 if (streamer != null) {
                     player.sendMessage(plugin.getMessage("show_streamer", streamer.twitchName, streamer.url));
                 } else {
@@ -368,27 +360,23 @@ public class TwitchCommand implements CommandExecutor, Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        String mcName = player.getName();
-        StreamerInfo streamer = streamerManager.getStreamers().stream()
-            .filter(s -> s.mcName.equalsIgnoreCase(mcName))
-            .findFirst().orElse(null);
+        StreamerInfo streamer = streamerManager.playerJoined(player.getUniqueId(), player.getName());
         if (streamer != null) {
-            Boolean isLive = streamerManager.getStreamerLiveStatus().get(streamer.twitchName.toLowerCase());
-            LuckPerms luckPerms = plugin.getLuckPerms();
-            if (luckPerms != null) {
-                UUID uuid = player.getUniqueId();
-                luckPerms.getUserManager().loadUser(uuid).thenAcceptAsync(user -> {
-                    if (Boolean.TRUE.equals(isLive)) {
-                        plugin.getLogger().info("[DEBUG] Выдаём группу " + plugin.getTwitchGroup() + " игроку UUID=" + uuid);
-                        user.data().add(InheritanceNode.builder(plugin.getTwitchGroup()).build());
-                    } else {
-                        plugin.getLogger().info("[DEBUG] Снимаем группу " + plugin.getTwitchGroup() + " с игрока UUID=" + uuid);
-                        user.data().clear(node -> node instanceof InheritanceNode &&
-                                ((InheritanceNode) node).getGroupName().equalsIgnoreCase(plugin.getTwitchGroup()));
-                    }
-                    luckPerms.getUserManager().saveUser(user);
-                });
-            }
+            plugin.onStreamerJoined(streamer);
+            // профиль вошедшего игрока уже с текстурами — голова в меню без запроса к Mojang
+            plugin.getProfileCache().remember(player.getName(), player.getPlayerProfile());
+            // без изменений (группа уже выдана/снята) запись в LuckPerms не выполняется
+            plugin.getGroupSyncService().request(player.getUniqueId(), streamerManager.isLive(streamer));
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        StreamerInfo streamer = streamerManager.findByMcName(player.getName());
+        streamerManager.playerQuit(player.getUniqueId(), player.getName());
+        if (streamer != null) {
+            plugin.onStreamerQuit(streamer);
         }
     }
 
@@ -0,0 +1,69 @@
+package twitch.model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* Типизированный результат запроса Helix /streams */
+public class HelixStreamsResult {
+    public enum Status {
+        OK, RATE_LIMIT, AUTH_ERROR, HTTP_ERROR, EXCEPTION
+    }
+
+    public final Status status;
+    public final int httpCode;
+    public final List<StreamRecord> streams;
+    public final String message;
+    public final Throwable error;
+
+    private HelixStreamsResult(Status status, int httpCode, List<StreamRecord> streams, String message, Throwable error) {
+        this.status = status;
+        this.httpCode = httpCode;
+        this.streams = streams;
+        this.message = message;
+        this.error = error;
+    }
+
+    public static HelixStreamsResult ok(List<StreamRecord> streams) {
+        return new HelixStreamsResult(Status.OK, 200, streams, "", null);
+    }
+
+    public static HelixStreamsResult rateLimited(String reset) {
+        return new HelixStreamsResult(Status.RATE_LIMIT, 429, Collections.emptyList(), reset == null ? "" : reset, null);
+    }
+
+    public static HelixStreamsResult httpError(Status status, int httpCode, String message) {
+        return new HelixStreamsResult(status, httpCode, Collections.emptyList(), message == null ? "" : message, null);
+    }
+
+    public static HelixStreamsResult exception(Throwable error) {
+        return new HelixStreamsResult(Status.EXCEPTION, 0, Collections.emptyList(), String.valueOf(error.getMessage()), error);
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    // user_login всех стримов с type=live (в нижнем регистре)
+    public Set<String> liveLogins() {
+        Set<String> result = new HashSet<>();
+        for (StreamRecord record : streams) {
+            if (record.isLive() && record.userLogin != null) {
+                result.add(StreamerInfo.normalize(record.userLogin));
+            }
+        }
+        return result;
+    }
+
+    // user_id каналов в эфире
+    public Set<String> liveUserIds() {
+        Set<String> result = new HashSet<>();
+        for (StreamRecord record : streams) {
+            if (record.isLive() && record.userId != null) {
+                result.add(record.userId);
+            }
+        }
+        return result;
+    }
+}
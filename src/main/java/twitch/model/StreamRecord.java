@@ -0,0 +1,26 @@
+package twitch.model;
+
+/* Запись о стриме из ответа Helix /streams */
+public class StreamRecord {
+    public final String userId;
+    public final String userLogin;
+    public final String type;
+    public final long viewerCount;
+    public final String startedAt;
+    public final String gameName;
+    public final String title;
+
+    public StreamRecord(String userId, String userLogin, String type, long viewerCount, String startedAt, String gameName, String title) {
+        this.userId = userId;
+        this.userLogin = userLogin;
+        this.type = type;
+        this.viewerCount = viewerCount;
+        this.startedAt = startedAt;
+        this.gameName = gameName;
+        this.title = title;
+    }
+
+    public boolean isLive() {
+        return "live".equals(type);
+    }
+}
@@ -1,16 +1,42 @@
 package twitch.model;
 
+import java.util.Locale;
+
 /* Модель стримера */
 public class StreamerInfo {
+    public final int id; // плотный индекс в StreamerManager
     public final String mcName;
     public final String twitchName;
     public final String url;
     public final String desc;
+    public final String twitchId; // user_id в Twitch; пусто, пока логин не разрешён
+
+    // нормализованные ключи для индексов
+    public final String mcKey;
+    public final String twitchKey;
+    public final String urlKey;
+
+    public StreamerInfo(int id, String mcName, String twitchName, String url, String desc) {
+        this(id, mcName, twitchName, url, desc, "");
+    }
 
-    public StreamerInfo(String mcName, String twitchName, String url, String desc) {
+    public StreamerInfo(int id, String mcName, String twitchName, String url, String desc, String twitchId) {
+        this.id = id;
         this.mcName = mcName;
         this.twitchName = twitchName;
         this.url = url;
         this.desc = desc;
+        this.twitchId = twitchId == null ? "" : twitchId;
+        this.mcKey = normalize(mcName);
+        this.twitchKey = normalize(twitchName);
+        this.urlKey = normalize(url);
+    }
+
+    public boolean hasTwitchId() {
+        return !twitchId.isEmpty();
+    }
+
+    public static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package twitch.service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/* Рассылка сообщений всем игрокам: строки, накопленные за тик, уходят одной задачей в планировщик каждого игрока */
+public class BroadcastDispatcher {
+    private final JavaPlugin plugin;
+    private final ConcurrentLinkedQueue<Consumer<Player>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    public BroadcastDispatcher(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    // Уже отрисованный текст (цветовые коды переведены заранее)
+    public void broadcast(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        enqueue(p -> p.sendMessage(text));
+    }
+
+    public void broadcast(net.kyori.adventure.text.Component component) {
+        enqueue(line(component));
+    }
+
+    public static Consumer<Player> line(net.kyori.adventure.text.Component component) {
+        return p -> p.sendMessage(component);
+    }
+
+    private void enqueue(Consumer<Player> line) {
+        pending.add(line);
+        if (flushScheduled.compareAndSet(false, true)) {
+            Bukkit.getGlobalRegionScheduler().execute(plugin, this::flush);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<Consumer<Player>> batch = new ArrayList<>();
+        Consumer<Player> line;
+        while ((line = pending.poll()) != null) {
+            batch.add(line);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        deliver(Bukkit.getOnlinePlayers(), batch);
+    }
+
+    // Одна задача на игрока со всеми строками пачки
+    public void deliver(java.util.Collection<? extends Player> players, List<Consumer<Player>> batch) {
+        for (Player p : players) {
+            // планировщик сущности: задача выполнится в регионе игрока, даже если он сменил регион
+            p.getScheduler().run(plugin, task -> {
+                for (Consumer<Player> l : batch) {
+                    l.accept(p);
+                }
+            }, null);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package twitch.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/* Исполнитель для блокирующих проверок Twitch: ограниченный пул или виртуальные потоки (JDK 21+) */
+public final class CheckExecutors {
+    public static final String MODE_BOUNDED = "bounded";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private CheckExecutors() {
+    }
+
+    // При переполнении очереди bounded-пул бросает RejectedExecutionException — вызывающий пропускает проверку
+    public static ExecutorService create(String mode, int threads, int queueSize, Logger logger) {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                logger.info("[TWITCH INIT] Проверки стримов выполняются в виртуальных потоках");
+                return virtual;
+            }
+            logger.warning("[TWITCH INIT] Виртуальные потоки недоступны (нужна Java 21+), используется ограниченный пул");
+        } else if (!MODE_BOUNDED.equalsIgnoreCase(mode)) {
+            logger.warning("[TWITCH INIT] Неизвестный twitch.executor.mode: " + mode + ", используется bounded");
+        }
+        int poolSize = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                r -> {
+                    Thread t = new Thread(r, "TwitchStream-check-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // Проверка возможности во время выполнения: плагин собирается под Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Проверки, ждущие свободного потока; у виртуальных потоков очереди нет
+    public static int queueDepth(ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+    }
+
+    // Даёт задачам завершиться до дедлайна, затем прерывает оставшиеся; true — всё завершилось
+    public static boolean shutdown(ExecutorService executor, long timeoutMs) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        return false;
+    }
+}
@@ -0,0 +1,171 @@
+package twitch.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/* Несколько серверов с одним client_id: Twitch опрашивает только лидер.
+   Каждый узел публикует своих онлайн-стримеров; лидер проверяет объединённый список и пишет статусы в общее
+   хранилище, остальные читают оттуда статусы своих онлайн-стримеров и сами применяют переходы.
+   Число запросов к API не зависит от количества серверов. Вся работа с хранилищем — в одном потоке */
+public class ClusterCoordinator {
+    public interface Listener {
+        // вызывается из потока координатора
+        void onLeadershipChanged(boolean leader);
+
+        // follower: twitch_key -> в эфире для своих онлайн-стримеров; вызывается из потока координатора
+        void onStatuses(Map<String, Boolean> statuses);
+    }
+
+    private static final long ERROR_LOG_THROTTLE_MS = 60_000L;
+
+    private final ClusterStore store;
+    private final String nodeId;
+    private final Supplier<Collection<String>> localMcKeys;
+    private final Supplier<Collection<String>> localTwitchKeys;
+    private final Listener listener;
+    private final long presenceTtlMs;
+    private final long statusTtlMs;
+    private final Logger logger;
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean leader;
+    private volatile Set<String> clusterOnline = Collections.emptySet();
+    // результаты проверок лидера, ещё не записанные в хранилище (повторы по логину схлопываются)
+    private final Map<String, Boolean> pendingStatus = new ConcurrentHashMap<>();
+    private long lastErrorLogMs;
+
+    public ClusterCoordinator(ClusterStore store, String nodeId, Supplier<Collection<String>> localMcKeys,
+                              Supplier<Collection<String>> localTwitchKeys, Listener listener,
+                              long syncPeriodMs, long presenceTtlMs, long statusTtlMs, Logger logger) {
+        this.store = store;
+        this.nodeId = nodeId;
+        this.localMcKeys = localMcKeys;
+        this.localTwitchKeys = localTwitchKeys;
+        this.listener = listener;
+        this.presenceTtlMs = presenceTtlMs;
+        this.statusTtlMs = statusTtlMs;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TwitchStream-cluster");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::tick, 0L, Math.max(500L, syncPeriodMs), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // MC-ники онлайн-стримеров всех узлов (только у лидера, иначе пусто)
+    public boolean isClusterOnline(String mcKey) {
+        return clusterOnline.contains(mcKey);
+    }
+
+    public Set<String> getClusterOnline() {
+        return clusterOnline;
+    }
+
+    // результат проверки лидера; уходит в хранилище пачкой на следующем такте
+    public void recordStatus(String twitchKey, boolean live) {
+        if (leader) {
+            pendingStatus.put(twitchKey, live);
+        }
+    }
+
+    private void tick() {
+        boolean nowLeader;
+        try {
+            nowLeader = store.tryLead();
+        } catch (Exception e) {
+            logError("блокировка лидера", e);
+            nowLeader = false;
+        }
+        if (nowLeader != leader) {
+            leader = nowLeader;
+            if (!nowLeader) {
+                clusterOnline = Collections.emptySet();
+                pendingStatus.clear();
+            }
+            logger.info("[TWITCH CLUSTER] Узел " + nodeId + (nowLeader ? " стал лидером опроса" : " больше не лидер, статусы берутся из общего хранилища"));
+            listener.onLeadershipChanged(nowLeader);
+        }
+        try {
+            store.publishPresence(nodeId, localMcKeys.get());
+            if (nowLeader) {
+                flushStatus();
+                clusterOnline = Collections.unmodifiableSet(store.readPresence(presenceTtlMs));
+            } else {
+                Collection<String> keys = localTwitchKeys.get();
+                if (!keys.isEmpty()) {
+                    listener.onStatuses(store.readStatus(keys, statusTtlMs));
+                }
+            }
+        } catch (Exception e) {
+            logError("синхронизация", e);
+        }
+    }
+
+    private void flushStatus() throws Exception {
+        if (pendingStatus.isEmpty()) {
+            return;
+        }
+        Map<String, Boolean> batch = new HashMap<>();
+        for (String key : pendingStatus.keySet()) {
+            Boolean live = pendingStatus.remove(key);
+            if (live != null) {
+                batch.put(key, live);
+            }
+        }
+        try {
+            store.writeStatus(batch);
+        } catch (Exception e) {
+            // не теряем результаты: более свежие значения, пришедшие за это время, не перетираем
+            for (Map.Entry<String, Boolean> entry : batch.entrySet()) {
+                pendingStatus.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            throw e;
+        }
+    }
+
+    private void logError(String what, Exception e) {
+        long now = System.currentTimeMillis();
+        if (now - lastErrorLogMs > ERROR_LOG_THROTTLE_MS) {
+            lastErrorLogMs = now;
+            logger.warning("[TWITCH CLUSTER] Ошибка общего хранилища (" + what + "): " + e);
+        }
+    }
+
+    // Дописывает статусы, убирает присутствие узла и отпускает лидерство
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (leader) {
+                flushStatus();
+            }
+            store.removePresence(nodeId);
+        } catch (Exception e) {
+            logError("выключение", e);
+        }
+        store.close();
+        leader = false;
+    }
+}
@@ -0,0 +1,30 @@
+package twitch.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/* Общее хранилище нескольких серверов за прокси: блокировка лидера опроса,
+   онлайн-стримеры каждого узла и статусы эфира, которые лидер получает от Twitch.
+   Все методы вызываются из одного потока ClusterCoordinator */
+public interface ClusterStore {
+
+    // true — этот узел держит блокировку лидера (захватывает её, если свободна)
+    boolean tryLead() throws Exception;
+
+    void publishPresence(String nodeId, Collection<String> mcKeys) throws Exception;
+
+    // MC-ники онлайн-стримеров всех узлов, отметившихся не раньше maxAgeMs назад
+    Set<String> readPresence(long maxAgeMs) throws Exception;
+
+    void removePresence(String nodeId) throws Exception;
+
+    // twitch_key -> в эфире; время проверки — момент записи
+    void writeStatus(Map<String, Boolean> statuses) throws Exception;
+
+    // статусы, проверенные лидером не раньше maxAgeMs назад; устаревших и неизвестных в ответе нет
+    Map<String, Boolean> readStatus(Collection<String> twitchKeys, long maxAgeMs) throws Exception;
+
+    // освобождает блокировку лидера
+    void close();
+}
@@ -0,0 +1,41 @@
+package twitch.service;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/* Подключение из twitch.database: читается в одном месте, чтобы пулы ростера и кластера
+   при неполном конфиге подключались к одной и той же базе */
+public final class DatabaseSettings {
+    public final String host;
+    public final int port;
+    public final String name;
+    public final String user;
+    public final String password;
+    public final boolean ssl;
+    public final int poolSize;
+
+    private DatabaseSettings(String host, int port, String name, String user, String password, boolean ssl, int poolSize) {
+        this.host = host;
+        this.port = port;
+        this.name = name;
+        this.user = user;
+        this.password = password;
+        this.ssl = ssl;
+        this.poolSize = poolSize;
+    }
+
+    // значения по умолчанию совпадают с config.yml
+    public static DatabaseSettings from(FileConfiguration config) {
+        return new DatabaseSettings(
+                config.getString("twitch.database.host", "127.0.0.1"),
+                config.getInt("twitch.database.port", 5432),
+                config.getString("twitch.database.name", "minecraft"),
+                config.getString("twitch.database.user", "postgres"),
+                config.getString("twitch.database.password", ""),
+                config.getBoolean("twitch.database.ssl", false),
+                config.getInt("twitch.database.pool_size", 10));
+    }
+
+    String jdbcUrl() {
+        return "jdbc:postgresql://" + host + ":" + port + "/" + name + "?sslmode=" + (ssl ? "require" : "disable");
+    }
+}
@@ -0,0 +1,474 @@
+package twitch.service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/* EventSub через WebSocket: push-уведомления stream.online / stream.offline вместо опроса */
+public class EventSubClient {
+
+    // уведомления адресуются по broadcaster_user_id: переименование канала их не ломает
+    public interface Listener {
+        void onStreamOnline(String userId);
+
+        void onStreamOffline(String userId);
+    }
+
+    public static final String DEFAULT_URL = "wss://eventsub.wss.twitch.tv/ws";
+    public static final String DEFAULT_SUBSCRIPTIONS_URL = "https://api.twitch.tv/helix/eventsub/subscriptions";
+
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000L;
+    private static final int DEFAULT_KEEPALIVE_SECONDS = 10;
+    private static final long WELCOME_TIMEOUT_MS = 15_000L;
+    // лимит Twitch на включённые подписки одной WebSocket-сессии; на стримера уходит две
+    public static final int DEFAULT_MAX_SUBSCRIPTIONS = 300;
+    private static final String[] SUBSCRIPTION_TYPES = {"stream.online", "stream.offline"};
+
+    private final TwitchApiService api;
+    private final Logger logger;
+    private final String url;
+    private final String subscriptionsUrl;
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+    private final int maxSubscriptions;
+
+    // user_id ростера в порядке приоритета; кому не хватило лимита — остаются на опросе
+    private volatile List<String> wantedIds = List.of();
+    // user_id с подписками в текущей сессии и отклонённые в ней (повторяются только в новой сессии)
+    private final Set<String> subscribedIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> failedIds = ConcurrentHashMap.newKeySet();
+    // подписки, занятые в текущей сессии, включая стримеров, уже удалённых из ростера
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+    private volatile WebSocket webSocket;
+    // соединение, ещё не получившее session_welcome (первое подключение, переподключение или перенос сессии)
+    private volatile FrameListener pending;
+    private volatile String sessionId;
+    private volatile long lastMessageAtMs;
+    private volatile int keepaliveSeconds = DEFAULT_KEEPALIVE_SECONDS;
+    private volatile boolean running;
+    private long reconnectDelayMs = 1_000L;
+    private int lastSkippedLogged;
+
+    public EventSubClient(TwitchApiService api, Logger logger, String url, String subscriptionsUrl, Listener listener) {
+        this(api, logger, url, subscriptionsUrl, DEFAULT_MAX_SUBSCRIPTIONS, listener);
+    }
+
+    public EventSubClient(TwitchApiService api, Logger logger, String url, String subscriptionsUrl, int maxSubscriptions,
+                          Listener listener) {
+        this.api = api;
+        this.logger = logger;
+        this.url = url == null || url.isEmpty() ? DEFAULT_URL : url;
+        this.subscriptionsUrl = subscriptionsUrl == null || subscriptionsUrl.isEmpty() ? DEFAULT_SUBSCRIPTIONS_URL : subscriptionsUrl;
+        this.listener = listener;
+        this.maxSubscriptions = maxSubscriptions > 0 ? Math.min(maxSubscriptions, DEFAULT_MAX_SUBSCRIPTIONS) : DEFAULT_MAX_SUBSCRIPTIONS;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TwitchStream-eventsub");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // userIds — Twitch user_id ростера, первыми те, кого важнее получать push-уведомлениями
+    public synchronized void start(Collection<String> userIds) {
+        if (running) {
+            return;
+        }
+        running = true;
+        setUserIds(userIds);
+        connect(url);
+        scheduler.scheduleAtFixedRate(this::checkKeepalive, 5, 5, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        WebSocket ws = webSocket;
+        FrameListener frames = pending;
+        webSocket = null;
+        pending = null;
+        sessionId = null;
+        if (ws != null) {
+            ws.abort();
+        }
+        if (frames != null && frames.socket != null) {
+            frames.socket.abort();
+        }
+        scheduler.shutdownNow();
+    }
+
+    // Синхронизация с ростером: подписываемся на новых стримеров текущей сессии, пока есть лимит
+    public void syncUserIds(Collection<String> userIds) {
+        setUserIds(userIds);
+        subscribedIds.retainAll(wantedIds);
+        if (sessionId != null) {
+            scheduler.execute(this::subscribeMissing);
+        }
+    }
+
+    public boolean isConnected() {
+        return sessionId != null;
+    }
+
+    // true — уведомления об этом канале приходят push; иначе его нужно опрашивать
+    public boolean isSubscribed(String userId) {
+        return sessionId != null && userId != null && subscribedIds.contains(userId);
+    }
+
+    private void setUserIds(Collection<String> userIds) {
+        List<String> ids = new ArrayList<>(userIds.size());
+        Set<String> seen = new java.util.HashSet<>();
+        for (String id : userIds) {
+            if (id != null && !id.isEmpty() && seen.add(id)) {
+                ids.add(id);
+            }
+        }
+        wantedIds = List.copyOf(ids);
+    }
+
+    private void connect(String target) {
+        if (!running) {
+            return;
+        }
+        logger.info("[TWITCH EVENTSUB] Подключение к " + target);
+        FrameListener frames = new FrameListener();
+        pending = frames;
+        api.getHttpClient().newWebSocketBuilder()
+                .buildAsync(URI.create(target), frames)
+                .whenComplete((ws, error) -> {
+                    if (error != null) {
+                        connectionLost(frames, null, "Не удалось подключиться: " + error.getMessage());
+                    } else if (!running) {
+                        ws.abort();
+                    }
+                });
+    }
+
+    // Соединение закрылось, оборвалось или не открылось. Переподключаемся, если это текущая сессия
+    // или подключение, ещё не дождавшееся session_welcome; старые соединения после переноса сессии игнорируются
+    private synchronized void connectionLost(FrameListener frames, WebSocket ws, String reason) {
+        boolean current = ws != null && ws == webSocket;
+        boolean wasPending = frames == pending;
+        if (!current && !wasPending) {
+            return;
+        }
+        if (wasPending) {
+            pending = null;
+        }
+        if (current) {
+            webSocket = null;
+        }
+        logger.info("[TWITCH EVENTSUB] " + reason);
+        if (!current && webSocket != null) {
+            // не удался перенос сессии: прежнее соединение ещё работает, Twitch закроет его сам
+            return;
+        }
+        scheduleReconnect();
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (!running) {
+            return;
+        }
+        sessionId = null;
+        long delay = reconnectDelayMs;
+        reconnectDelayMs = Math.min(reconnectDelayMs * 2, MAX_RECONNECT_DELAY_MS);
+        scheduler.schedule(() -> connect(url), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void checkKeepalive() {
+        FrameListener frames = pending;
+        if (frames != null && System.currentTimeMillis() - frames.startedAtMs > WELCOME_TIMEOUT_MS) {
+            if (frames.socket != null) {
+                frames.socket.abort();
+            }
+            connectionLost(frames, null, "Нет session_welcome " + WELCOME_TIMEOUT_MS + " мс, переподключение");
+        }
+        WebSocket ws = webSocket;
+        if (ws == null || sessionId == null) {
+            return;
+        }
+        long silentMs = System.currentTimeMillis() - lastMessageAtMs;
+        if (silentMs > (keepaliveSeconds + 5L) * 1000L) {
+            logger.info("[TWITCH EVENTSUB] Нет keepalive " + silentMs + " мс, переподключение");
+            webSocket = null;
+            ws.abort();
+            scheduleReconnect();
+        }
+    }
+
+    // в потоке клиента: подписки по сохранённым user_id, не больше maxSubscriptions на сессию
+    private void subscribeMissing() {
+        String session = sessionId;
+        if (session == null) {
+            return;
+        }
+        int skipped = 0;
+        for (String userId : wantedIds) {
+            if (subscribedIds.contains(userId) || failedIds.contains(userId)) {
+                continue;
+            }
+            if (!reserveSubscriptions()) {
+                skipped++;
+                continue;
+            }
+            if (!session.equals(sessionId)) {
+                subscriptionCount.addAndGet(-SUBSCRIPTION_TYPES.length);
+                return;
+            }
+            subscribedIds.add(userId);
+            for (String type : SUBSCRIPTION_TYPES) {
+                subscribe(session, userId, type);
+            }
+        }
+        if (skipped > 0 && skipped != lastSkippedLogged) {
+            logger.warning("[TWITCH EVENTSUB] Лимит подписок сессии (" + maxSubscriptions + ") исчерпан, " + skipped
+                    + " стримеров проверяются опросом");
+        }
+        lastSkippedLogged = skipped;
+    }
+
+    // две подписки на стримера или ни одной
+    private boolean reserveSubscriptions() {
+        while (true) {
+            int used = subscriptionCount.get();
+            if (used + SUBSCRIPTION_TYPES.length > maxSubscriptions) {
+                return false;
+            }
+            if (subscriptionCount.compareAndSet(used, used + SUBSCRIPTION_TYPES.length)) {
+                return true;
+            }
+        }
+    }
+
+    private void subscribe(String session, String userId, String type) {
+        String body = "{\"type\":\"" + type + "\",\"version\":\"1\"," +
+                "\"condition\":{\"broadcaster_user_id\":\"" + userId + "\"}," +
+                "\"transport\":{\"method\":\"websocket\",\"session_id\":\"" + session + "\"}}";
+        api.sendPostRequestAsync(subscriptionsUrl, body).thenAccept(code -> {
+            if (code == 202 || code == 409) {
+                return;
+            }
+            // отклонённую подписку в этой сессии не повторяем: стример остаётся на опросе
+            synchronized (this) {
+                if (!session.equals(sessionId)) {
+                    return;
+                }
+                subscriptionCount.decrementAndGet();
+                subscribedIds.remove(userId);
+                failedIds.add(userId);
+            }
+        });
+    }
+
+    // под тем же замком, что и connectionLost: оба меняют состояние сессии
+    private synchronized void handleFrame(WebSocket ws, String text) {
+        lastMessageAtMs = System.currentTimeMillis();
+        Frame frame;
+        try {
+            frame = Frame.parse(text);
+        } catch (IOException e) {
+            logger.warning("[TWITCH EVENTSUB] Некорректное сообщение: " + e.getMessage());
+            return;
+        }
+        switch (frame.messageType) {
+            case "session_welcome" -> {
+                FrameListener frames = pending;
+                if (frames != null && frames.socket == ws) {
+                    pending = null;
+                }
+                boolean migrated = ws != webSocket && webSocket != null && sessionId != null;
+                WebSocket previous = webSocket;
+                webSocket = ws;
+                sessionId = frame.sessionId;
+                if (frame.keepaliveSeconds > 0) {
+                    keepaliveSeconds = frame.keepaliveSeconds;
+                }
+                reconnectDelayMs = 1_000L;
+                if (migrated) {
+                    // session_reconnect: подписки переносятся Twitch на новую сессию
+                    logger.info("[TWITCH EVENTSUB] Сессия перенесена: " + frame.sessionId);
+                    previous.sendClose(WebSocket.NORMAL_CLOSURE, "reconnect");
+                } else {
+                    logger.info("[TWITCH EVENTSUB] Сессия открыта: " + frame.sessionId);
+                    // подписки прежней сессии удалены Twitch вместе с ней
+                    subscribedIds.clear();
+                    failedIds.clear();
+                    subscriptionCount.set(0);
+                    scheduler.execute(this::subscribeMissing);
+                }
+            }
+            case "session_reconnect" -> {
+                if (frame.reconnectUrl != null && !frame.reconnectUrl.isEmpty()) {
+                    connect(frame.reconnectUrl);
+                }
+            }
+            case "notification" -> {
+                if (frame.userId == null) {
+                    return;
+                }
+                if ("stream.online".equals(frame.subscriptionType)) {
+                    listener.onStreamOnline(frame.userId);
+                } else if ("stream.offline".equals(frame.subscriptionType)) {
+                    listener.onStreamOffline(frame.userId);
+                }
+            }
+            case "revocation" -> {
+                logger.warning("[TWITCH EVENTSUB] Подписка отозвана: " + frame.subscriptionType + " user_id=" + frame.userId);
+                // отозванная подписка не считается в лимите; канал возвращается на опрос до новой сессии
+                if (frame.userId != null && subscribedIds.remove(frame.userId)) {
+                    subscriptionCount.decrementAndGet();
+                    failedIds.add(frame.userId);
+                } else if (frame.userId != null && failedIds.contains(frame.userId)) {
+                    subscriptionCount.decrementAndGet();
+                }
+            }
+            default -> {
+                // session_keepalive и прочее — только обновляем lastMessageAtMs
+            }
+        }
+    }
+
+    private final class FrameListener implements WebSocket.Listener {
+        private final StringBuilder partial = new StringBuilder();
+        private final long startedAtMs = System.currentTimeMillis();
+        private volatile WebSocket socket;
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            socket = ws;
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String text = partial.toString();
+                partial.setLength(0);
+                handleFrame(ws, text);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            connectionLost(this, ws, "Соединение закрыто: " + statusCode + " " + reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            connectionLost(this, ws, "Ошибка соединения: " + error.getMessage());
+        }
+    }
+
+    /* Поля сообщения EventSub, нужные плагину */
+    private static final class Frame {
+        String messageType = "";
+        String subscriptionType;
+        String sessionId;
+        String reconnectUrl;
+        int keepaliveSeconds;
+        String userId;
+
+        static Frame parse(String text) throws IOException {
+            Frame frame = new Frame();
+            JsonPullReader reader = new JsonPullReader(new StringReader(text));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "metadata" -> frame.readMetadata(reader);
+                    case "payload" -> frame.readPayload(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return frame;
+        }
+
+        private void readMetadata(JsonPullReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "message_type" -> messageType = String.valueOf(reader.nextString());
+                    case "subscription_type" -> subscriptionType = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readPayload(JsonPullReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() != JsonPullReader.Token.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "session" -> readSession(reader);
+                    case "event" -> readEvent(reader);
+                    case "subscription" -> readSubscription(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readSession(JsonPullReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id" -> sessionId = reader.nextString();
+                    case "keepalive_timeout_seconds" -> keepaliveSeconds = (int) reader.nextLong();
+                    case "reconnect_url" -> reconnectUrl = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readEvent(JsonPullReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "broadcaster_user_id" -> userId = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        private void readSubscription(JsonPullReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("type".equals(name)) {
+                    String type = reader.nextString();
+                    if (subscriptionType == null) {
+                        subscriptionType = type;
+                    }
+                } else if ("condition".equals(name) && reader.peek() == JsonPullReader.Token.BEGIN_OBJECT) {
+                    readEvent(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+}
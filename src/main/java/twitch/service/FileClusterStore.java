@@ -0,0 +1,152 @@
+package twitch.service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Координация через общий каталог (серверы на одной машине): лидер — держатель блокировки leader.lock,
+   онлайн-стримеры узла — presence/<узел>.txt, статусы — status.txt (строка: логин, 0/1, время проверки) */
+public class FileClusterStore implements ClusterStore {
+    // статусы, которые никто не обновлял сутки, из файла выбрасываются
+    private static final long STATUS_RETENTION_MS = 86_400_000L;
+
+    private final Path dir;
+    private final Path presenceDir;
+    private final Path statusFile;
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    public FileClusterStore(Path dir) throws IOException {
+        this.dir = dir;
+        this.presenceDir = dir.resolve("presence");
+        this.statusFile = dir.resolve("status.txt");
+        Files.createDirectories(presenceDir);
+    }
+
+    @Override
+    public boolean tryLead() throws IOException {
+        if (lock != null && lock.isValid()) {
+            return true;
+        }
+        if (lockChannel == null || !lockChannel.isOpen()) {
+            lockChannel = FileChannel.open(dir.resolve("leader.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        lock = lockChannel.tryLock();
+        return lock != null;
+    }
+
+    private Path presenceFile(String nodeId) {
+        return presenceDir.resolve(nodeId.replaceAll("[^A-Za-z0-9_.-]", "_") + ".txt");
+    }
+
+    @Override
+    public void publishPresence(String nodeId, Collection<String> mcKeys) throws IOException {
+        YamlRosterStorage.writeAtomically(presenceFile(nodeId), String.join("\n", mcKeys));
+    }
+
+    @Override
+    public Set<String> readPresence(long maxAgeMs) throws IOException {
+        Set<String> result = new HashSet<>();
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(presenceDir, "*.txt")) {
+            for (Path file : files) {
+                try {
+                    if (now - Files.getLastModifiedTime(file).toMillis() > maxAgeMs) {
+                        continue;
+                    }
+                    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                        if (!line.isEmpty()) {
+                            result.add(line);
+                        }
+                    }
+                } catch (java.nio.file.NoSuchFileException ignored) {
+                    // узел как раз заменяет свой файл
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void removePresence(String nodeId) throws IOException {
+        Files.deleteIfExists(presenceFile(nodeId));
+    }
+
+    // twitch_key -> {live, время проверки}
+    private Map<String, long[]> readStatusFile() throws IOException {
+        Map<String, long[]> result = new HashMap<>();
+        if (!Files.exists(statusFile)) {
+            return result;
+        }
+        List<String> lines = Files.readAllLines(statusFile, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            if (parts.length == 3) {
+                try {
+                    result.put(parts[0], new long[]{Long.parseLong(parts[1]), Long.parseLong(parts[2])});
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void writeStatus(Map<String, Boolean> statuses) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<String, long[]> merged = readStatusFile();
+        for (Map.Entry<String, Boolean> e : statuses.entrySet()) {
+            merged.put(e.getKey(), new long[]{e.getValue() ? 1L : 0L, now});
+        }
+        StringBuilder sb = new StringBuilder(merged.size() * 32);
+        for (Map.Entry<String, long[]> e : merged.entrySet()) {
+            if (now - e.getValue()[1] <= STATUS_RETENTION_MS) {
+                sb.append(e.getKey()).append(' ').append(e.getValue()[0]).append(' ').append(e.getValue()[1]).append('\n');
+            }
+        }
+        YamlRosterStorage.writeAtomically(statusFile, sb.toString());
+    }
+
+    @Override
+    public Map<String, Boolean> readStatus(Collection<String> twitchKeys, long maxAgeMs) throws IOException {
+        Map<String, Boolean> result = new HashMap<>();
+        if (twitchKeys.isEmpty()) {
+            return result;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, long[]> all = readStatusFile();
+        for (String key : twitchKeys) {
+            long[] status = all.get(key);
+            if (status != null && now - status[1] <= maxAgeMs) {
+                result.put(key, status[0] == 1L);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        lock = null;
+        lockChannel = null;
+    }
+}
@@ -0,0 +1,149 @@
+package twitch.service;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.types.InheritanceNode;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/* Выдача/снятие группы стримера через LuckPerms: желаемое состояние по UUID, одна запись на игрока в очереди, без лишних saveUser */
+public class GroupSyncService {
+    private static final UUID STOP = new UUID(0L, 0L);
+
+    private final LuckPerms luckPerms;
+    private final Supplier<String> group;
+    private final Logger logger;
+    // последнее запрошенное состояние; быстрые включения/выключения перезаписывают друг друга
+    private final Map<UUID, Boolean> desired = new ConcurrentHashMap<>();
+    // UUID, уже стоящие в очереди
+    private final Set<UUID> queued = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<UUID> queue;
+    private final Thread worker;
+    private volatile long lastOverflowLogMs = 0L;
+    // в desired есть UUID, не поместившиеся в очередь; поток доставит их, когда освободится место
+    private volatile boolean overflowed;
+
+    public GroupSyncService(LuckPerms luckPerms, Supplier<String> group, Logger logger, int queueCapacity) {
+        this.luckPerms = luckPerms;
+        this.group = group;
+        this.logger = logger;
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, queueCapacity));
+        this.worker = new Thread(this::workLoop, "TwitchStream-groups");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // Запросить состояние группы; применяется асинхронно, повторные запросы до применения схлопываются
+    public void request(UUID uuid, boolean member) {
+        if (luckPerms == null) {
+            return;
+        }
+        desired.put(uuid, member);
+        if (queued.add(uuid) && !queue.offer(uuid)) {
+            queued.remove(uuid);
+            overflowed = true;
+            long now = System.currentTimeMillis();
+            if (now - lastOverflowLogMs > 60_000L) {
+                lastOverflowLogMs = now;
+                logger.warning("[LUCKPERMS] Очередь выдачи групп переполнена (" + queue.size() + "), изменение для " + uuid + " будет применено, когда очередь освободится");
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void workLoop() {
+        while (true) {
+            UUID uuid;
+            try {
+                uuid = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (uuid == STOP) {
+                return;
+            }
+            // снимаем отметку до чтения состояния: запрос, пришедший во время применения, снова встанет в очередь
+            queued.remove(uuid);
+            Boolean member = desired.remove(uuid);
+            if (member == null) {
+                continue;
+            }
+            try {
+                apply(uuid, member);
+            } catch (Exception e) {
+                logger.warning("[LUCKPERMS] Ошибка изменения группы для " + uuid + ": " + e.getMessage());
+            }
+            if (overflowed) {
+                requeueOverflowed();
+            }
+        }
+    }
+
+    // Ставит в очередь желаемые состояния, которым не хватило места; флаг сбрасывается до обхода,
+    // поэтому переполнение во время обхода снова его выставит
+    private void requeueOverflowed() {
+        overflowed = false;
+        for (UUID uuid : desired.keySet()) {
+            if (queued.add(uuid) && !queue.offer(uuid)) {
+                queued.remove(uuid);
+                overflowed = true;
+                return;
+            }
+        }
+    }
+
+    private void apply(UUID uuid, boolean member) {
+        String groupName = group.get();
+        // онлайн-игрок уже загружен в LuckPerms — не читаем хранилище повторно
+        User user = luckPerms.getUserManager().getUser(uuid);
+        if (user == null) {
+            user = luckPerms.getUserManager().loadUser(uuid).join();
+        }
+        if (hasGroup(user, groupName) == member) {
+            return;
+        }
+        if (member) {
+            user.data().add(InheritanceNode.builder(groupName).build());
+        } else {
+            user.data().clear(node -> node instanceof InheritanceNode &&
+                    ((InheritanceNode) node).getGroupName().equalsIgnoreCase(groupName));
+        }
+        luckPerms.getUserManager().saveUser(user).join();
+    }
+
+    private static boolean hasGroup(User user, String groupName) {
+        for (InheritanceNode node : user.getNodes(net.luckperms.api.node.NodeType.INHERITANCE)) {
+            if (node.getGroupName().equalsIgnoreCase(groupName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Дописывает уже поставленные изменения (не дольше timeoutMs) и останавливает поток
+    public void shutdown(long timeoutMs) {
+        if (!queue.offer(STOP)) {
+            worker.interrupt();
+            return;
+        }
+        try {
+            worker.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+        }
+    }
+}
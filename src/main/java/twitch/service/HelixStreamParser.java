@@ -0,0 +1,123 @@
+package twitch.service;
+
+import twitch.model.StreamRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Разбор ответов Helix прямо из потока ответа */
+public final class HelixStreamParser {
+
+    private HelixStreamParser() {
+    }
+
+    // {"data":[{...}, ...], "pagination":{...}} -> записи стримов
+    public static List<StreamRecord> parseStreams(Reader source) throws IOException {
+        List<StreamRecord> result = new ArrayList<>();
+        JsonPullReader reader = new JsonPullReader(source);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("data".equals(name) && reader.peek() == JsonPullReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    result.add(readStream(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+
+    private static StreamRecord readStream(JsonPullReader reader) throws IOException {
+        String userId = null;
+        String userLogin = null;
+        String type = null;
+        long viewerCount = 0L;
+        String startedAt = null;
+        String gameName = null;
+        String title = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "user_id" -> userId = reader.nextString();
+                case "user_login" -> userLogin = reader.nextString();
+                case "type" -> type = reader.nextString();
+                case "viewer_count" -> viewerCount = reader.nextLong();
+                case "started_at" -> startedAt = reader.nextString();
+                case "game_name" -> gameName = reader.nextString();
+                case "title" -> title = reader.nextString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new StreamRecord(userId, userLogin, type, viewerCount, startedAt, gameName, title);
+    }
+
+    // /helix/users: {"data":[{"id":"...","login":"..."}, ...]} -> login (нижний регистр) -> id
+    public static Map<String, String> parseUserIds(Reader source) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        JsonPullReader reader = new JsonPullReader(source);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("data".equals(name) && reader.peek() == JsonPullReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String id = null;
+                    String login = null;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "id" -> id = reader.nextString();
+                            case "login" -> login = reader.nextString();
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    if (id != null && login != null) {
+                        result.put(login.toLowerCase(), id);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+
+    // {"error":"Unauthorized","status":401,"message":"..."} -> "Unauthorized: ..."
+    public static String parseErrorMessage(Reader source) {
+        String error = "";
+        String message = "";
+        try {
+            JsonPullReader reader = new JsonPullReader(source);
+            if (reader.peek() != JsonPullReader.Token.BEGIN_OBJECT) {
+                return "";
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "error" -> error = String.valueOf(reader.nextString());
+                    case "message" -> message = String.valueOf(reader.nextString());
+                    default -> reader.skipValue();
+                }
+            }
+        } catch (IOException ignored) {
+            // тело ошибки не JSON — возвращаем то, что успели разобрать
+        }
+        if (error.isEmpty()) {
+            return message;
+        }
+        return message.isEmpty() ? error : error + ": " + message;
+    }
+}
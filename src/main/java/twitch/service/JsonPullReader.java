@@ -0,0 +1,374 @@
+package twitch.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/* Потоковый (pull) JSON-ридер: читает токены прямо из Reader без сборки всего тела в строку */
+public final class JsonPullReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[2048];
+    private int pos = 0;
+    private int limit = 0;
+
+    private int[] stack = new int[16];
+    private int stackSize = 0;
+    private Token peeked = null;
+
+    // переиспользуемый буфер для строк и литералов
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    public JsonPullReader(Reader in) {
+        this.in = in;
+        push(EMPTY_DOCUMENT);
+    }
+
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[stackSize - 1];
+        switch (scope) {
+            case EMPTY_ARRAY -> {
+                int c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c == -1) {
+                    throw syntaxError("неожиданный конец данных");
+                }
+                pos--;
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                return peeked = peekValue();
+            }
+            case NONEMPTY_ARRAY -> {
+                int c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("ожидалась ',' или ']'");
+                }
+                return peeked = peekValue();
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("ожидалась ',' или '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("ожидалось имя поля");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            }
+            case DANGLING_NAME -> {
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("ожидалось ':'");
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return peeked = peekValue();
+            }
+            case EMPTY_DOCUMENT -> {
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return peeked = peekValue();
+            }
+            default -> {
+                int c = nextNonWhitespace();
+                if (c == -1) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                throw syntaxError("лишние данные после конца документа");
+            }
+        }
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case -1 -> throw syntaxError("неожиданный конец данных");
+            case '{' -> {
+                return Token.BEGIN_OBJECT;
+            }
+            case '[' -> {
+                return Token.BEGIN_ARRAY;
+            }
+            case '"' -> {
+                return Token.STRING;
+            }
+            case 't', 'f' -> {
+                pos--;
+                return Token.BOOLEAN;
+            }
+            case 'n' -> {
+                pos--;
+                return Token.NULL;
+            }
+            default -> {
+                pos--;
+                return Token.NUMBER;
+            }
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readQuoted();
+    }
+
+    // Строковое значение; числа и boolean возвращаются как текст, null — как null
+    public String nextString() throws IOException {
+        Token t = peek();
+        peeked = null;
+        return switch (t) {
+            case STRING -> readQuoted();
+            case NUMBER, BOOLEAN -> readLiteral();
+            case NULL -> {
+                readLiteral();
+                yield null;
+            }
+            default -> throw syntaxError("ожидалась строка, получено " + t);
+        };
+    }
+
+    public long nextLong() throws IOException {
+        String value = nextString();
+        if (value == null || value.isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(value);
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        return "true".equals(nextString());
+    }
+
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token t = peek();
+            peeked = null;
+            switch (t) {
+                case BEGIN_OBJECT -> {
+                    push(EMPTY_OBJECT);
+                    depth++;
+                }
+                case BEGIN_ARRAY -> {
+                    push(EMPTY_ARRAY);
+                    depth++;
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    stackSize--;
+                    depth--;
+                }
+                case NAME, STRING -> skipQuoted();
+                case NUMBER, BOOLEAN, NULL -> skipLiteral();
+                case END_DOCUMENT -> {
+                    return;
+                }
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected) {
+            throw syntaxError("ожидался " + expected + ", получено " + t);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] grown = new int[stack.length * 2];
+            System.arraycopy(stack, 0, grown, 0, stackSize);
+            stack = grown;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private boolean fill() throws IOException {
+        limit = in.read(buffer, 0, buffer.length);
+        pos = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private String readQuoted() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("незакрытая строка");
+            }
+            if (c == '"') {
+                return scratch.toString();
+            }
+            if (c == '\\') {
+                scratch.append(readEscape());
+            } else {
+                scratch.append((char) c);
+            }
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("незакрытая строка");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readEscape();
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'n' -> {
+                return '\n';
+            }
+            case 't' -> {
+                return '\t';
+            }
+            case 'r' -> {
+                return '\r';
+            }
+            case 'b' -> {
+                return '\b';
+            }
+            case 'f' -> {
+                return '\f';
+            }
+            case 'u' -> {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = Character.digit(read(), 16);
+                    if (h < 0) {
+                        throw syntaxError("неверная \\u-последовательность");
+                    }
+                    value = (value << 4) | h;
+                }
+                return (char) value;
+            }
+            case -1 -> throw syntaxError("незакрытая строка");
+            default -> {
+                return (char) c;
+            }
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                break;
+            }
+            if (isLiteralEnd(c)) {
+                pos--;
+                break;
+            }
+            scratch.append((char) c);
+        }
+        return scratch.toString();
+    }
+
+    private void skipLiteral() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                return;
+            }
+            if (isLiteralEnd(c)) {
+                pos--;
+                return;
+            }
+        }
+    }
+
+    private static boolean isLiteralEnd(int c) {
+        return c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ':';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("[JSON] " + message);
+    }
+}
@@ -0,0 +1,76 @@
+package twitch.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Статусы эфира между запусками: файл из строк "twitch-логин время", время — когда стример последний раз был в эфире.
+   Восстановленный статус забирается, когда стример оказывается на сервере, и не даёт нового перехода —
+   ни анонса, ни записи в LuckPerms. Записи старше maxAgeMs не восстанавливаются */
+public class LiveStatusSnapshot {
+    private final Path file;
+    private final long maxAgeMs;
+    // восстановленные, но ещё не забранные статусы: twitch_key -> время
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private boolean lastWrittenEmpty;
+
+    public LiveStatusSnapshot(Path file, long maxAgeMs) {
+        this.file = file;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    // вызывается в потоке хранилища до загрузки ростера
+    public void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                long at = Long.parseLong(parts[1]);
+                if (now - at <= maxAgeMs) {
+                    pending.merge(parts[0], at, Math::max);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    // true — стример был в эфире недавно; запись забирается один раз
+    public boolean take(String twitchKey) {
+        Long at = pending.remove(twitchKey);
+        return at != null && System.currentTimeMillis() - at <= maxAgeMs;
+    }
+
+    // Текущие в эфире (время — сейчас) плюс ещё не забранные восстановленные статусы со своим временем
+    public synchronized void save(Set<String> liveTwitchKeys) throws IOException {
+        long now = System.currentTimeMillis();
+        pending.values().removeIf(at -> now - at > maxAgeMs);
+        if (liveTwitchKeys.isEmpty() && pending.isEmpty()) {
+            if (lastWrittenEmpty) {
+                return;
+            }
+            lastWrittenEmpty = true;
+        } else {
+            lastWrittenEmpty = false;
+        }
+        StringBuilder sb = new StringBuilder((liveTwitchKeys.size() + pending.size()) * 32);
+        for (String key : liveTwitchKeys) {
+            sb.append(key).append(' ').append(now).append('\n');
+        }
+        for (Map.Entry<String, Long> e : pending.entrySet()) {
+            if (!liveTwitchKeys.contains(e.getKey())) {
+                sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+            }
+        }
+        YamlRosterStorage.writeAtomically(file, sb.toString());
+    }
+}
@@ -0,0 +1,64 @@
+package twitch.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* Таблица статуса эфира по StreamerInfo.id: битовые блоки, чтение и запись без блокировок */
+public final class LiveStatusTable {
+    private static final int WORDS_PER_CHUNK = 64;          // 4096 id на блок
+    private static final int IDS_PER_CHUNK = WORDS_PER_CHUNK * 64;
+    private static final int MAX_CHUNKS = 256;              // до 1 048 576 стримеров
+
+    // блоки создаются лениво и никогда не заменяются, поэтому запись не теряется при росте
+    private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    public boolean get(int id) {
+        if (id < 0 || id >= IDS_PER_CHUNK * MAX_CHUNKS) {
+            return false;
+        }
+        AtomicLongArray chunk = chunks.get(id / IDS_PER_CHUNK);
+        if (chunk == null) {
+            return false;
+        }
+        int bit = id % IDS_PER_CHUNK;
+        return (chunk.get(bit >>> 6) & (1L << bit)) != 0L;
+    }
+
+    // возвращает предыдущее значение
+    public boolean set(int id, boolean live) {
+        if (id < 0 || id >= IDS_PER_CHUNK * MAX_CHUNKS) {
+            return false;
+        }
+        AtomicLongArray chunk = chunks.get(id / IDS_PER_CHUNK);
+        if (chunk == null) {
+            if (!live) {
+                return false;
+            }
+            chunks.compareAndSet(id / IDS_PER_CHUNK, null, new AtomicLongArray(WORDS_PER_CHUNK));
+            chunk = chunks.get(id / IDS_PER_CHUNK);
+        }
+        int bit = id % IDS_PER_CHUNK;
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long current = chunk.get(word);
+            long next = live ? (current | mask) : (current & ~mask);
+            if (current == next || chunk.compareAndSet(word, current, next)) {
+                return (current & mask) != 0L;
+            }
+        }
+    }
+
+    // обнуляет слова в существующих блоках: замена блока потеряла бы параллельный set() в старый
+    public void clearAll() {
+        for (int i = 0; i < MAX_CHUNKS; i++) {
+            AtomicLongArray chunk = chunks.get(i);
+            if (chunk == null) {
+                continue;
+            }
+            for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+                chunk.set(w, 0L);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package twitch.service;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import twitch.model.StreamerInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/* Шаблон сообщения, разобранный один раз: литералы уже переведены в компоненты, плейсхолдеры — индексы */
+public final class MessageTemplate {
+    static final int PLAYER = 0;
+    static final int LINK = 1;
+    static final int DESC = 2;
+    private static final String[] PLACEHOLDERS = {"{player}", "{link}", "{desc}"};
+
+    private static final LegacyComponentSerializer LEGACY = LegacyComponentSerializer.legacySection();
+
+    // сегменты по порядку: литерал (placeholder = -1) или плейсхолдер
+    private final String[] literals;
+    private final Component[] literalComponents;
+    private final int[] placeholders;
+    // активное форматирование (§-коды) перед каждым плейсхолдером — чтобы значение унаследовало цвет
+    private final String[] formats;
+    // отрисованные сообщения по стримеру: повторный анонс не делает строковой работы
+    private final Map<StreamerInfo, Component> streamerCache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private MessageTemplate(String[] literals, Component[] literalComponents, int[] placeholders, String[] formats) {
+        this.literals = literals;
+        this.literalComponents = literalComponents;
+        this.placeholders = placeholders;
+        this.formats = formats;
+    }
+
+    public static MessageTemplate compile(String raw) {
+        String text = org.bukkit.ChatColor.translateAlternateColorCodes('&', raw == null ? "" : raw);
+        List<String> literals = new ArrayList<>();
+        List<Integer> placeholders = new ArrayList<>();
+        List<String> formats = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        String literalFormat = "";
+        String format = "";
+        int i = 0;
+        while (i < text.length()) {
+            int placeholder = placeholderAt(text, i);
+            if (placeholder >= 0) {
+                addSegment(literals, placeholders, formats, literalFormat + literal, -1, "");
+                addSegment(literals, placeholders, formats, PLACEHOLDERS[placeholder], placeholder, format);
+                literal.setLength(0);
+                literalFormat = format;
+                i += PLACEHOLDERS[placeholder].length();
+                continue;
+            }
+            char c = text.charAt(i);
+            literal.append(c);
+            if (c == '§' && i + 1 < text.length()) {
+                char code = Character.toLowerCase(text.charAt(i + 1));
+                literal.append(text.charAt(i + 1));
+                format = applyFormat(format, code);
+                i += 2;
+                continue;
+            }
+            i++;
+        }
+        addSegment(literals, placeholders, formats, literalFormat + literal, -1, "");
+        int n = literals.size();
+        Component[] components = new Component[n];
+        int[] placeholderArray = new int[n];
+        for (int k = 0; k < n; k++) {
+            placeholderArray[k] = placeholders.get(k);
+            if (placeholderArray[k] < 0) {
+                components[k] = LEGACY.deserialize(literals.get(k));
+            }
+        }
+        return new MessageTemplate(literals.toArray(new String[0]), components, placeholderArray, formats.toArray(new String[0]));
+    }
+
+    private static void addSegment(List<String> literals, List<Integer> placeholders, List<String> formats,
+                                   String value, int placeholder, String format) {
+        if (placeholder < 0 && value.isEmpty()) {
+            return;
+        }
+        literals.add(value);
+        placeholders.add(placeholder);
+        formats.add(format);
+    }
+
+    private static int placeholderAt(String text, int index) {
+        for (int p = 0; p < PLACEHOLDERS.length; p++) {
+            if (text.startsWith(PLACEHOLDERS[p], index)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    // цвет и сброс заменяют форматирование, стили (k-o) добавляются к нему
+    private static String applyFormat(String format, char code) {
+        if ((code >= '0' && code <= '9') || (code >= 'a' && code <= 'f') || code == 'r' || code == 'x') {
+            // цифры/буквы после §x — часть hex-цвета
+            if (format.startsWith("§x") && format.length() < 14 && code != 'r' && code != 'x') {
+                return format + '§' + code;
+            }
+            return code == 'r' ? "" : "§" + code;
+        }
+        if (code >= 'k' && code <= 'o') {
+            return format + '§' + code;
+        }
+        return format;
+    }
+
+    // Строка с §-кодами; null-значения оставляют плейсхолдер как есть
+    public String renderLegacy(String player, String link, String desc) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < literals.length; k++) {
+            int placeholder = placeholders[k];
+            if (placeholder < 0) {
+                sb.append(literals[k]);
+                continue;
+            }
+            String value = value(placeholder, player, link, desc);
+            sb.append(value != null ? value : literals[k]);
+        }
+        return sb.toString();
+    }
+
+    // Компонент Adventure: {link} кликабелен
+    public Component render(String player, String link, String desc) {
+        Component result = Component.empty();
+        for (int k = 0; k < literals.length; k++) {
+            int placeholder = placeholders[k];
+            if (placeholder < 0) {
+                result = result.append(literalComponents[k]);
+                continue;
+            }
+            String value = value(placeholder, player, link, desc);
+            if (value == null) {
+                value = literals[k];
+            }
+            Component fragment = LEGACY.deserialize(formats[k] + value);
+            if (placeholder == LINK && !value.isEmpty()) {
+                fragment = fragment.clickEvent(ClickEvent.openUrl(value));
+            }
+            result = result.append(fragment);
+        }
+        return result;
+    }
+
+    // {player} — MC-ник, {link} — ссылка, {desc} — Twitch-ник; результат кешируется на экземпляр стримера
+    public Component render(StreamerInfo streamer) {
+        Component cached = streamerCache.get(streamer);
+        if (cached == null) {
+            cached = render(streamer.mcName, streamer.url, streamer.twitchName);
+            streamerCache.put(streamer, cached);
+        }
+        return cached;
+    }
+
+    private static String value(int placeholder, String player, String link, String desc) {
+        return switch (placeholder) {
+            case PLAYER -> player;
+            case LINK -> link;
+            default -> desc;
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package twitch.service;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/* Все messages.* из конфига, скомпилированные при загрузке и перезагрузке; набор заменяется целиком */
+public class MessageTemplates {
+    private static final MessageTemplate EMPTY = MessageTemplate.compile("");
+
+    private volatile Map<String, MessageTemplate> templates = Collections.emptyMap();
+
+    public void compile(ConfigurationSection messages) {
+        Map<String, MessageTemplate> compiled = new HashMap<>();
+        if (messages != null) {
+            java.util.Set<String> keys = new java.util.HashSet<>(messages.getKeys(false));
+            // ключи из встроенного config.yml, которых нет в файле на диске
+            ConfigurationSection defaults = messages.getDefaultSection();
+            if (defaults != null) {
+                keys.addAll(defaults.getKeys(false));
+            }
+            for (String key : keys) {
+                compiled.put(key, MessageTemplate.compile(messages.getString(key)));
+            }
+        }
+        templates = Collections.unmodifiableMap(compiled);
+    }
+
+    public MessageTemplate get(String key) {
+        MessageTemplate template = templates.get(key);
+        return template != null ? template : EMPTY;
+    }
+}
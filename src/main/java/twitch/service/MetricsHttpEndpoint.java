@@ -0,0 +1,64 @@
+package twitch.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/* Локальная точка /metrics для Prometheus (по умолчанию только 127.0.0.1) */
+public class MetricsHttpEndpoint {
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private MetricsHttpEndpoint(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    // null, если порт занят или адрес недоступен — плагин работает дальше без эндпоинта
+    public static MetricsHttpEndpoint start(String host, int port, MetricsRegistry registry, Logger logger) {
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException | RuntimeException e) {
+            logger.warning("[TWITCH METRICS] Не удалось открыть " + host + ":" + port + ": " + e.getMessage());
+            return null;
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "TwitchStream-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        server.createContext("/metrics", exchange -> respond(exchange, registry));
+        server.setExecutor(executor);
+        server.start();
+        logger.info("[TWITCH METRICS] Метрики Prometheus: http://" + host + ":" + port + "/metrics");
+        return new MetricsHttpEndpoint(server, executor);
+    }
+
+    private static void respond(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.renderPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,205 @@
+package twitch.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/* Метрики плагина: счётчики, гистограммы задержек и мгновенные значения.
+   Запись — LongAdder без блокировок; чтение — сводка для /стрим метрики и текстовый формат Prometheus */
+public class MetricsRegistry {
+
+    // границы корзин (мс): HTTP-запросы к Twitch и задачи глобального региона
+    public static final double[] API_LATENCY_BUCKETS_MS = {25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    public static final double[] TASK_DURATION_BUCKETS_MS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50};
+
+    // имя метрики -> (метки в формате Prometheus -> значение)
+    private final Map<String, Map<String, LongAdder>> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Map<String, Histogram>> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, String> help = new ConcurrentHashMap<>();
+
+    private static final class Histogram {
+        final double[] bounds;
+        final LongAdder[] buckets; // последняя корзина — +Inf
+        final DoubleAdder sum = new DoubleAdder();
+        final LongAdder count = new LongAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(value);
+            count.increment();
+        }
+
+        // Оценка квантиля по верхней границе корзины
+        double quantile(double q) {
+            long total = count.sum();
+            if (total == 0L) {
+                return 0d;
+            }
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0L;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    public void describe(String name, String text) {
+        help.put(name, text);
+    }
+
+    // labels — пары ключ/значение
+    public void increment(String name, String... labels) {
+        series(counters, name, labels, k -> new LongAdder()).increment();
+    }
+
+    public void observe(String name, double[] bounds, double valueMs, String... labels) {
+        series(histograms, name, labels, k -> new Histogram(bounds)).observe(valueMs);
+    }
+
+    public void observeSince(String name, double[] bounds, long startNanos, String... labels) {
+        observe(name, bounds, (System.nanoTime() - startNanos) / 1_000_000d, labels);
+    }
+
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    private static <T> T series(Map<String, Map<String, T>> family, String name, String[] labels,
+                                java.util.function.Function<String, T> factory) {
+        return family.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(formatLabels(labels), factory);
+    }
+
+    private static String formatLabels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // {a="b"} + le="10" -> {a="b",le="10"}
+    private static String withLabel(String labels, String key, String value) {
+        String extra = key + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + extra + "}" : labels.substring(0, labels.length() - 1) + "," + extra + "}";
+    }
+
+    private static String formatNumber(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static long readGauge(LongSupplier supplier) {
+        try {
+            return supplier.getAsLong();
+        } catch (RuntimeException e) {
+            return -1L;
+        }
+    }
+
+    // Текстовый формат Prometheus 0.0.4
+    public String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Map.Entry<String, Map<String, LongAdder>> family : counters.entrySet()) {
+            header(sb, family.getKey(), "counter");
+            for (Map.Entry<String, LongAdder> s : new TreeMap<>(family.getValue()).entrySet()) {
+                sb.append(family.getKey()).append(s.getKey()).append(' ').append(s.getValue().sum()).append('\n');
+            }
+        }
+        for (Map.Entry<String, Map<String, Histogram>> family : histograms.entrySet()) {
+            String name = family.getKey();
+            header(sb, name, "histogram");
+            for (Map.Entry<String, Histogram> s : new TreeMap<>(family.getValue()).entrySet()) {
+                Histogram h = s.getValue();
+                long cumulative = 0L;
+                for (int i = 0; i < h.buckets.length; i++) {
+                    cumulative += h.buckets[i].sum();
+                    String le = i < h.bounds.length ? formatNumber(h.bounds[i]) : "+Inf";
+                    sb.append(name).append("_bucket").append(withLabel(s.getKey(), "le", le))
+                            .append(' ').append(cumulative).append('\n');
+                }
+                sb.append(name).append("_sum").append(s.getKey()).append(' ').append(formatNumber(h.sum.sum())).append('\n');
+                sb.append(name).append("_count").append(s.getKey()).append(' ').append(h.count.sum()).append('\n');
+            }
+        }
+        for (Map.Entry<String, LongSupplier> g : gauges.entrySet()) {
+            header(sb, g.getKey(), "gauge");
+            sb.append(g.getKey()).append(' ').append(readGauge(g.getValue())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void header(StringBuilder sb, String name, String type) {
+        String text = help.get(name);
+        if (text != null) {
+            sb.append("# HELP ").append(name).append(' ').append(text).append('\n');
+        }
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // Короткая сводка для чата: значения, для гистограмм — count/avg/p50/p95
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, LongSupplier> g : gauges.entrySet()) {
+            lines.add(g.getKey() + " = " + readGauge(g.getValue()));
+        }
+        for (Map.Entry<String, Map<String, LongAdder>> family : counters.entrySet()) {
+            for (Map.Entry<String, LongAdder> s : new TreeMap<>(family.getValue()).entrySet()) {
+                lines.add(family.getKey() + s.getKey() + " = " + s.getValue().sum());
+            }
+        }
+        for (Map.Entry<String, Map<String, Histogram>> family : histograms.entrySet()) {
+            for (Map.Entry<String, Histogram> s : new TreeMap<>(family.getValue()).entrySet()) {
+                Histogram h = s.getValue();
+                long count = h.count.sum();
+                double avg = count == 0L ? 0d : h.sum.sum() / count;
+                lines.add(family.getKey() + s.getKey() + " n=" + count
+                        + String.format(java.util.Locale.ROOT, " avg=%.2f", avg)
+                        + " p50<=" + formatNumber(h.quantile(0.5))
+                        + " p95<=" + formatNumber(h.quantile(0.95)) + " мс");
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,113 @@
+package twitch.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/* Адаптивный опрос стримеров на колесе таймеров: быстро после входа, реже в эфире, с отступом для офлайн; моменты размазаны джиттером */
+public class PollScheduler {
+    private static final int WHEEL_SIZE = 512; // степень двойки
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final long joinDelayTicks;
+    private final long liveIntervalTicks;
+    private final long offlineIntervalTicks;
+    private final long offlineMaxTicks;
+    private final double jitter;
+
+    // ключи стримеров (нормализованный MC-ник) по слотам; срок в due — источник истины, лишние записи в слотах отбрасываются
+    @SuppressWarnings("unchecked")
+    private final LinkedHashSet<String>[] slots = new LinkedHashSet[WHEEL_SIZE];
+    private final Map<String, Long> due = new HashMap<>();
+    // сколько проверок подряд стример был офлайн
+    private final Map<String, Integer> offlineStreak = new HashMap<>();
+    private long now = 0L;
+
+    // интервалы — в тиках колеса
+    public PollScheduler(long joinDelayTicks, long liveIntervalTicks, long offlineIntervalTicks, long offlineMaxTicks, double jitter) {
+        this.joinDelayTicks = Math.max(1L, joinDelayTicks);
+        this.liveIntervalTicks = Math.max(1L, liveIntervalTicks);
+        this.offlineIntervalTicks = Math.max(1L, offlineIntervalTicks);
+        this.offlineMaxTicks = Math.max(this.offlineIntervalTicks, offlineMaxTicks);
+        this.jitter = Math.max(0.0, Math.min(0.5, jitter));
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots[i] = new LinkedHashSet<>();
+        }
+    }
+
+    // Стример зашёл на сервер: первая проверка почти сразу
+    public synchronized void onJoined(String key) {
+        offlineStreak.remove(key);
+        schedule(key, joinDelayTicks);
+    }
+
+    public synchronized void onQuit(String key) {
+        due.remove(key);
+        offlineStreak.remove(key);
+    }
+
+    // Стример не в расписании (перезагрузка, добавлен в ростер онлайн) — ставим в случайный момент периода
+    public synchronized void ensureScheduled(String key) {
+        if (!due.containsKey(key)) {
+            schedule(key, 1L + ThreadLocalRandom.current().nextLong(offlineIntervalTicks));
+        }
+    }
+
+    // Результат проверки определяет следующий интервал
+    public synchronized void onResult(String key, boolean live) {
+        if (!due.containsKey(key)) {
+            return; // вышел, пока шёл запрос
+        }
+        if (live) {
+            offlineStreak.remove(key);
+            schedule(key, liveIntervalTicks);
+            return;
+        }
+        int streak = offlineStreak.merge(key, 1, Integer::sum);
+        long interval = offlineIntervalTicks << Math.min(streak - 1, MAX_BACKOFF_SHIFT);
+        schedule(key, Math.min(offlineMaxTicks, interval));
+    }
+
+    // Следующий тик колеса: ключи, которым пора проверяться.
+    // Каждый выданный ключ сразу перепланируется на офлайн-интервал, чтобы потерянный ответ не выбил стримера из опроса
+    public synchronized List<String> advance() {
+        now++;
+        LinkedHashSet<String> slot = slots[(int) (now & MASK)];
+        List<String> fired = new ArrayList<>();
+        Iterator<String> it = slot.iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            Long at = due.get(key);
+            if (at == null || (at & MASK) != (now & MASK)) {
+                it.remove(); // запись устарела: стример вышел или перепланирован
+            } else if (at <= now) {
+                it.remove();
+                fired.add(key);
+            }
+        }
+        for (String key : fired) {
+            schedule(key, offlineIntervalTicks);
+        }
+        return fired;
+    }
+
+    public synchronized int size() {
+        return due.size();
+    }
+
+    private void schedule(String key, long delayTicks) {
+        long delay = delayTicks;
+        if (jitter > 0.0 && delay > 1L) {
+            double factor = 1.0 + (ThreadLocalRandom.current().nextDouble() * 2.0 - 1.0) * jitter;
+            delay = Math.max(1L, Math.round(delay * factor));
+        }
+        long at = now + delay;
+        due.put(key, at);
+        slots[(int) (at & MASK)].add(key);
+    }
+}
@@ -0,0 +1,185 @@
+package twitch.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/* Координация через PostgreSQL: лидер — держатель advisory lock на отдельном соединении,
+   присутствие и статусы — в таблицах; время везде берётся из БД, расхождение часов узлов не важно */
+public class PostgresClusterStore implements ClusterStore {
+    private static final String LEADER_LOCK = "SELECT pg_try_advisory_lock(hashtext('twitch_stream_leader'))";
+    private static final String UPSERT_STATUS =
+            "INSERT INTO twitch_cluster_status (twitch_key, live, checked_at) VALUES (?, ?, now()) "
+                    + "ON CONFLICT (twitch_key) DO UPDATE SET live = EXCLUDED.live, checked_at = now()";
+
+    private final HikariDataSource dataSource;
+    // соединение, на котором держится advisory lock; пока оно живо — узел лидер
+    private Connection lockConnection;
+    private boolean tablesReady;
+
+    public PostgresClusterStore(DatabaseSettings settings) {
+        // одно соединение под блокировку лидера, одно — под запросы
+        this.dataSource = PostgresRosterStorage.dataSource("TwitchStream-cluster", settings, 2);
+    }
+
+    private void ensureTables(Connection connection) throws SQLException {
+        if (tablesReady) {
+            return;
+        }
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS twitch_cluster_presence ("
+                    + "node_id VARCHAR(64) NOT NULL, mc_key VARCHAR(64) NOT NULL, seen_at TIMESTAMPTZ NOT NULL DEFAULT now(), "
+                    + "PRIMARY KEY (node_id, mc_key))");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS twitch_cluster_status ("
+                    + "twitch_key VARCHAR(64) PRIMARY KEY, live BOOLEAN NOT NULL, checked_at TIMESTAMPTZ NOT NULL DEFAULT now())");
+        }
+        tablesReady = true;
+    }
+
+    @Override
+    public boolean tryLead() throws SQLException {
+        if (lockConnection != null) {
+            if (lockConnection.isValid(2)) {
+                return true;
+            }
+            // соединение оборвалось — сессия и её блокировка потеряны, пробуем взять заново
+            closeLockConnection();
+        }
+        Connection connection = dataSource.getConnection();
+        boolean acquired = false;
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(LEADER_LOCK)) {
+            acquired = rs.next() && rs.getBoolean(1);
+        } finally {
+            if (acquired) {
+                lockConnection = connection;
+            } else {
+                connection.close();
+            }
+        }
+        return acquired;
+    }
+
+    @Override
+    public void publishPresence(String nodeId, Collection<String> mcKeys) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            ensureTables(connection);
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = connection.prepareStatement("DELETE FROM twitch_cluster_presence WHERE node_id = ?")) {
+                    ps.setString(1, nodeId);
+                    ps.executeUpdate();
+                }
+                if (!mcKeys.isEmpty()) {
+                    try (PreparedStatement ps = connection.prepareStatement(
+                            "INSERT INTO twitch_cluster_presence (node_id, mc_key, seen_at) VALUES (?, ?, now())")) {
+                        for (String key : mcKeys) {
+                            ps.setString(1, nodeId);
+                            ps.setString(2, key);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public Set<String> readPresence(long maxAgeMs) throws SQLException {
+        Set<String> result = new HashSet<>();
+        try (Connection connection = dataSource.getConnection()) {
+            ensureTables(connection);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT DISTINCT mc_key FROM twitch_cluster_presence WHERE seen_at > now() - make_interval(secs => ?)")) {
+                ps.setDouble(1, maxAgeMs / 1000d);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void removePresence(String nodeId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("DELETE FROM twitch_cluster_presence WHERE node_id = ?")) {
+            ps.setString(1, nodeId);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void writeStatus(Map<String, Boolean> statuses) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            ensureTables(connection);
+            try (PreparedStatement ps = connection.prepareStatement(UPSERT_STATUS)) {
+                for (Map.Entry<String, Boolean> e : statuses.entrySet()) {
+                    ps.setString(1, e.getKey());
+                    ps.setBoolean(2, e.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Boolean> readStatus(Collection<String> twitchKeys, long maxAgeMs) throws SQLException {
+        Map<String, Boolean> result = new HashMap<>();
+        if (twitchKeys.isEmpty()) {
+            return result;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            ensureTables(connection);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT twitch_key, live FROM twitch_cluster_status "
+                            + "WHERE twitch_key = ANY (?) AND checked_at > now() - make_interval(secs => ?)")) {
+                ps.setArray(1, connection.createArrayOf("varchar", twitchKeys.toArray()));
+                ps.setDouble(2, maxAgeMs / 1000d);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        result.put(rs.getString(1), rs.getBoolean(2));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void closeLockConnection() {
+        try {
+            lockConnection.close();
+        } catch (SQLException ignored) {
+        }
+        lockConnection = null;
+    }
+
+    @Override
+    public void close() {
+        if (lockConnection != null) {
+            // соединение вернётся в пул, а не закроется — блокировку снимаем явно
+            try (Statement st = lockConnection.createStatement()) {
+                st.execute("SELECT pg_advisory_unlock_all()");
+            } catch (SQLException ignored) {
+            }
+            closeLockConnection();
+        }
+        dataSource.close();
+    }
+}
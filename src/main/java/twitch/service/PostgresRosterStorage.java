@@ -0,0 +1,153 @@
+package twitch.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import twitch.model.StreamerInfo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/* Ростер в PostgreSQL: пул HikariCP, пакетные upsert в одной транзакции.
+   Статусы эфира здесь не хранятся: тёплый перезапуск — live-status.txt, общие статусы серверов — хранилище кластера */
+public class PostgresRosterStorage implements RosterStorage {
+    private static final String UPSERT_STREAMER =
+            "INSERT INTO twitch_streamers (mc_key, mc_name, twitch_name, url, description, twitch_id, updated_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, now()) "
+                    + "ON CONFLICT (mc_key) DO UPDATE SET mc_name = EXCLUDED.mc_name, twitch_name = EXCLUDED.twitch_name, "
+                    + "url = EXCLUDED.url, description = EXCLUDED.description, twitch_id = EXCLUDED.twitch_id, updated_at = now()";
+    private static final String DELETE_STREAMER = "DELETE FROM twitch_streamers WHERE mc_key = ?";
+    // отметка, что ростер уже заведён в БД: после неё пустая таблица — пустой ростер, а не повод для миграции
+    private static final String MARK_INITIALIZED =
+            "INSERT INTO twitch_roster_meta (meta_key, meta_value) VALUES ('roster_initialized', '1') ON CONFLICT (meta_key) DO NOTHING";
+
+    private final HikariDataSource dataSource;
+
+    // pool_size — верхняя граница: запросы идут из одного потока хранилища, поэтому обычно занято
+    // одно соединение, а minimumIdle = 1 не держит остальные открытыми
+    public PostgresRosterStorage(DatabaseSettings settings) {
+        this(dataSource("TwitchStream-db", settings, settings.poolSize));
+    }
+
+    // готовый пул (проверка на локальной базе)
+    PostgresRosterStorage(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    static HikariDataSource dataSource(String poolName, DatabaseSettings settings, int poolSize) {
+        return dataSource(poolName, settings.jdbcUrl(), settings.user, settings.password, poolSize);
+    }
+
+    static HikariDataSource dataSource(String poolName, String jdbcUrl, String user, String password, int poolSize) {
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName(poolName);
+        hikari.setDriverClassName("org.postgresql.Driver");
+        hikari.setJdbcUrl(jdbcUrl);
+        hikari.setUsername(user);
+        hikari.setPassword(password);
+        hikari.setMaximumPoolSize(Math.max(1, poolSize));
+        hikari.setMinimumIdle(1);
+        hikari.setConnectionTimeout(10_000L);
+        hikari.addDataSourceProperty("reWriteBatchedInserts", "true");
+        return new HikariDataSource(hikari);
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void createTables(Connection connection) throws SQLException {
+        // таблица ростера из версии без отметки: ростер уже заведён, даже если сейчас пуст
+        boolean legacy = tableExists(connection, "twitch_streamers") && !tableExists(connection, "twitch_roster_meta");
+        try (Statement st = connection.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS twitch_streamers ("
+                    + "mc_key VARCHAR(64) PRIMARY KEY, mc_name VARCHAR(64) NOT NULL, twitch_name VARCHAR(64) NOT NULL, "
+                    + "url TEXT NOT NULL, description TEXT NOT NULL DEFAULT '', updated_at TIMESTAMPTZ NOT NULL DEFAULT now())");
+            // user_id канала хранится рядом с записью ростера
+            st.executeUpdate("ALTER TABLE twitch_streamers ADD COLUMN IF NOT EXISTS twitch_id VARCHAR(32) NOT NULL DEFAULT ''");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS twitch_roster_meta ("
+                    + "meta_key VARCHAR(64) PRIMARY KEY, meta_value TEXT NOT NULL)");
+            if (legacy) {
+                st.executeUpdate(MARK_INITIALIZED);
+            }
+        }
+    }
+
+    @Override
+    public List<StreamerInfo> load() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            createTables(connection);
+            boolean initialized;
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT 1 FROM twitch_roster_meta WHERE meta_key = 'roster_initialized'")) {
+                initialized = rs.next();
+            }
+            List<StreamerInfo> result = new ArrayList<>();
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT mc_name, twitch_name, url, description, twitch_id FROM twitch_streamers ORDER BY mc_key")) {
+                while (rs.next()) {
+                    result.add(new StreamerInfo(result.size(), rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)));
+                }
+            }
+            // ростер ещё ни разу не сохранялся — как отсутствующий файл: менеджер перенесёт его из прежнего хранилища.
+            // После первой записи пустая таблица — это пустой ростер (все стримеры удалены)
+            return initialized || !result.isEmpty() ? result : null;
+        }
+    }
+
+    @Override
+    public void save(List<StreamerInfo> snapshot, Collection<StreamerInfo> upserted, Collection<StreamerInfo> removed) throws SQLException {
+        // без точечных изменений (полная запись после миграции) сохраняем весь снимок
+        Collection<StreamerInfo> toUpsert = upserted.isEmpty() && removed.isEmpty() ? snapshot : upserted;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (!toUpsert.isEmpty()) {
+                    try (PreparedStatement ps = connection.prepareStatement(UPSERT_STREAMER)) {
+                        for (StreamerInfo s : toUpsert) {
+                            ps.setString(1, s.mcKey);
+                            ps.setString(2, s.mcName);
+                            ps.setString(3, s.twitchName);
+                            ps.setString(4, s.url);
+                            ps.setString(5, s.desc != null ? s.desc : "");
+                            ps.setString(6, s.twitchId);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    try (PreparedStatement ps = connection.prepareStatement(DELETE_STREAMER)) {
+                        for (StreamerInfo s : removed) {
+                            ps.setString(1, s.mcKey);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                try (Statement st = connection.createStatement()) {
+                    st.executeUpdate(MARK_INITIALIZED);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+}
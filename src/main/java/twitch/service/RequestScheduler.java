@@ -0,0 +1,206 @@
+package twitch.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/* Token bucket для запросов к Twitch API: пополняется по заголовкам Ratelimit-*, выдаёт токены по приоритету */
+public class RequestScheduler {
+
+    public enum Priority {
+        HIGH, // запросы по команде игрока
+        LOW   // фоновые проверки
+    }
+
+    public static final int DEFAULT_LIMIT = 800;
+    private static final long BUCKET_WINDOW_MS = 60_000L;
+    private static final long MAX_SLEEP_MS = 250L;
+
+    private final Logger logger;
+    private final int lowPriorityReserve;
+    private final PriorityBlockingQueue<Waiter> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+    private volatile long lastPacingLogMs = 0L;
+
+    // состояние корзины, защищено this
+    private int limit;
+    private double tokens;
+    private long lastRefillMs;
+    private long resetAtMs;
+
+    public RequestScheduler(Logger logger, int defaultLimit, int lowPriorityReserve) {
+        this.logger = logger;
+        this.limit = defaultLimit > 0 ? defaultLimit : DEFAULT_LIMIT;
+        this.tokens = this.limit;
+        this.lastRefillMs = System.currentTimeMillis();
+        this.lowPriorityReserve = Math.max(0, lowPriorityReserve);
+        this.dispatcher = new Thread(this::dispatchLoop, "TwitchStream-ratelimit");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    // Будущее завершается, когда под запрос выделен токен; после shutdown — отменяется
+    public CompletableFuture<Void> acquire(Priority priority) {
+        Waiter waiter = new Waiter(priority, sequence.incrementAndGet());
+        if (!running) {
+            waiter.future.cancel(false);
+            return waiter.future;
+        }
+        queue.add(waiter);
+        // shutdown мог опустошить очередь между проверкой и добавлением
+        if (!running) {
+            cancelPending();
+        }
+        return waiter.future;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public synchronized int getAvailableTokens() {
+        refill(System.currentTimeMillis());
+        return (int) tokens;
+    }
+
+    // Значения заголовков ответа — источник истины для остатка корзины
+    public synchronized void onHeaders(String limitHdr, String remainingHdr, String resetHdr) {
+        int parsedLimit = parseInt(limitHdr);
+        if (parsedLimit > 0) {
+            limit = parsedLimit;
+        }
+        int remaining = parseInt(remainingHdr);
+        long now = System.currentTimeMillis();
+        if (remaining >= 0) {
+            tokens = Math.min(tokens, remaining);
+            lastRefillMs = now;
+        }
+        int reset = parseInt(resetHdr);
+        if (reset > 0) {
+            resetAtMs = reset * 1000L;
+        }
+    }
+
+    // 429: корзина пуста до Ratelimit-Reset
+    public synchronized void onRateLimited(long retryAtMs) {
+        tokens = 0;
+        lastRefillMs = System.currentTimeMillis();
+        resetAtMs = Math.max(resetAtMs, retryAtMs);
+    }
+
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        cancelPending();
+    }
+
+    private void cancelPending() {
+        Waiter waiter;
+        while ((waiter = queue.poll()) != null) {
+            waiter.future.cancel(false);
+        }
+    }
+
+    private void dispatchLoop() {
+        try {
+            dispatch();
+        } finally {
+            // ожидающий, которого диспетчер держал в руках во время shutdown, вернулся в очередь уже после её очистки
+            cancelPending();
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            Waiter waiter;
+            try {
+                waiter = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!running) {
+                waiter.future.cancel(false);
+                return;
+            }
+            long waitMs = tryReserve(waiter.priority);
+            if (waitMs > 0L) {
+                long now = System.currentTimeMillis();
+                if (now - lastPacingLogMs > 60_000L) {
+                    lastPacingLogMs = now;
+                    logger.info("[TWITCH API] Лимит запросов почти исчерпан, запросы ставятся в очередь: queue=" + queue.size() + " wait_ms=" + waitMs);
+                }
+                // возвращаем в очередь: за время ожидания мог прийти запрос с более высоким приоритетом
+                queue.add(waiter);
+                try {
+                    Thread.sleep(Math.min(waitMs, MAX_SLEEP_MS));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            waiter.future.complete(null);
+        }
+    }
+
+    // 0 — токен выдан, иначе сколько мс подождать
+    private synchronized long tryReserve(Priority priority) {
+        long now = System.currentTimeMillis();
+        refill(now);
+        double required = priority == Priority.HIGH ? 1.0 : 1.0 + lowPriorityReserve;
+        if (tokens >= required) {
+            tokens -= 1.0;
+            return 0L;
+        }
+        double refillPerMs = limit / (double) BUCKET_WINDOW_MS;
+        long untilRefill = (long) Math.ceil((required - tokens) / refillPerMs);
+        if (resetAtMs > now) {
+            untilRefill = Math.min(untilRefill, resetAtMs - now);
+        }
+        return Math.max(1L, untilRefill);
+    }
+
+    private void refill(long now) {
+        if (resetAtMs > 0L && now >= resetAtMs) {
+            tokens = limit;
+            resetAtMs = 0L;
+            lastRefillMs = now;
+            return;
+        }
+        long elapsed = now - lastRefillMs;
+        if (elapsed > 0L) {
+            tokens = Math.min(limit, tokens + elapsed * (limit / (double) BUCKET_WINDOW_MS));
+            lastRefillMs = now;
+        }
+    }
+
+    private static int parseInt(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        final Priority priority;
+        final long seq;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(Priority priority, long seq) {
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package twitch.service;
+
+import twitch.model.StreamerInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/* Отложенное сохранение ростера: изменения за окно debounce сливаются в одну запись вне игровых потоков */
+public class RosterPersistence {
+    private final RosterStorage storage;
+    private final Supplier<List<StreamerInfo>> snapshot;
+    private final long delayMs;
+    // общий однопоточный исполнитель плагина: задачи старого и нового менеджера выполняются по порядку
+    private final ScheduledExecutorService executor;
+
+    // ожидающие изменения по нормализованному MC-нику; защищены this
+    private final Map<String, StreamerInfo> pendingUpserts = new LinkedHashMap<>();
+    private final Map<String, StreamerInfo> pendingRemovals = new LinkedHashMap<>();
+    private static final long MAX_RETRY_DELAY_MS = 60_000L;
+
+    private ScheduledFuture<?> scheduled;
+    // пауза перед повтором после ошибки записи; 0 — ошибок не было
+    private long retryDelayMs;
+    private boolean fullSavePending;
+    private boolean closed;
+
+    public RosterPersistence(RosterStorage storage, Supplier<List<StreamerInfo>> snapshot, long delayMs, ScheduledExecutorService executor) {
+        this.storage = storage;
+        this.snapshot = snapshot;
+        this.delayMs = Math.max(0L, delayMs);
+        this.executor = executor;
+    }
+
+    public RosterStorage getStorage() {
+        return storage;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public synchronized void upserted(StreamerInfo info) {
+        pendingRemovals.remove(info.mcKey);
+        pendingUpserts.put(info.mcKey, info);
+        schedule();
+    }
+
+    public synchronized void removed(StreamerInfo info) {
+        pendingUpserts.remove(info.mcKey);
+        pendingRemovals.put(info.mcKey, info);
+        schedule();
+    }
+
+    // Прочитанный из хранилища ростер с наложенными ещё не записанными добавлениями и удалениями.
+    // Вызывается под writeLock менеджера, поэтому между наложением и публикацией новых изменений нет
+    public synchronized List<StreamerInfo> withPending(List<StreamerInfo> loaded) {
+        if (pendingUpserts.isEmpty() && pendingRemovals.isEmpty()) {
+            return loaded;
+        }
+        Map<String, StreamerInfo> upserts = new LinkedHashMap<>(pendingUpserts);
+        List<StreamerInfo> result = new ArrayList<>(loaded.size() + upserts.size());
+        for (StreamerInfo info : loaded) {
+            if (pendingRemovals.containsKey(info.mcKey)) {
+                continue;
+            }
+            StreamerInfo pending = upserts.remove(info.mcKey);
+            result.add(pending != null ? pending : info);
+        }
+        result.addAll(upserts.values());
+        return result;
+    }
+
+    // полная перезапись (например, после миграции из config.yml)
+    public synchronized void saveAll() {
+        fullSavePending = true;
+        schedule();
+    }
+
+    private void schedule() {
+        if (closed) {
+            return;
+        }
+        if (scheduled == null || scheduled.isDone()) {
+            scheduled = executor.schedule(this::flush, Math.max(delayMs, retryDelayMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // под this: ошибка записи — изменения уже возвращены в очередь, повторяем с растущей паузой
+    private void retry() {
+        retryDelayMs = Math.min(MAX_RETRY_DELAY_MS, Math.max(1_000L, retryDelayMs * 2));
+        schedule();
+    }
+
+    // в потоке хранилища; перед перечитыванием ростера дописывает ожидающие изменения
+    void flush() {
+        List<StreamerInfo> upserts;
+        List<StreamerInfo> removals;
+        boolean fullSave;
+        synchronized (this) {
+            // изменения, пришедшие во время записи, запланируют следующую
+            scheduled = null;
+            fullSave = fullSavePending;
+            if (pendingUpserts.isEmpty() && pendingRemovals.isEmpty() && !fullSavePending) {
+                return;
+            }
+            upserts = new ArrayList<>(pendingUpserts.values());
+            removals = new ArrayList<>(pendingRemovals.values());
+            pendingUpserts.clear();
+            pendingRemovals.clear();
+            fullSavePending = false;
+        }
+        try {
+            storage.save(snapshot.get(), upserts, removals);
+        } catch (Exception e) {
+            logError("Ошибка сохранения ростера стримеров: ", e);
+            synchronized (this) {
+                // вернём изменения, чтобы следующая попытка их не потеряла; более новые не перетираем
+                for (StreamerInfo info : upserts) {
+                    if (!pendingRemovals.containsKey(info.mcKey)) {
+                        pendingUpserts.putIfAbsent(info.mcKey, info);
+                    }
+                }
+                for (StreamerInfo info : removals) {
+                    if (!pendingUpserts.containsKey(info.mcKey)) {
+                        pendingRemovals.putIfAbsent(info.mcKey, info);
+                    }
+                }
+                fullSavePending |= fullSave;
+                retry();
+            }
+            return;
+        }
+        synchronized (this) {
+            retryDelayMs = 0L;
+        }
+    }
+
+    private static void logError(String prefix, Exception e) {
+        java.io.StringWriter sw = new java.io.StringWriter();
+        e.printStackTrace(new java.io.PrintWriter(sw));
+        System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, prefix + sw.toString());
+    }
+
+    // Ставит в очередь финальную запись и закрытие хранилища; не блокирует вызывающий поток
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+        executor.execute(() -> {
+            flush();
+            storage.close();
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package twitch.service;
+
+import twitch.model.StreamerInfo;
+
+import java.util.Collection;
+import java.util.List;
+
+/* Хранилище ростера стримеров */
+public interface RosterStorage {
+
+    // null — хранилище ещё не создано (нужна миграция); пустой список — ростер без стримеров
+    List<StreamerInfo> load() throws Exception;
+
+    // snapshot — полный ростер; upserted/removed — изменения с прошлого сохранения
+    void save(List<StreamerInfo> snapshot, Collection<StreamerInfo> upserted, Collection<StreamerInfo> removed) throws Exception;
+
+    default void close() {
+    }
+}
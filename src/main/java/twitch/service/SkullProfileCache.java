@@ -0,0 +1,251 @@
+package twitch.service;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+import com.destroystokyo.paper.profile.ProfileProperty;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import twitch.model.StreamerInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Профили для голов в меню стримеров: UUID и текстуры по MC-нику, хранятся в profiles.yml.
+   PlayerProfile.complete блокирует на запросе к Mojang, поэтому разрешение идёт в отдельном потоке;
+   меню берёт только то, что уже в кеше, и никогда не ждёт */
+public class SkullProfileCache {
+    private static final long FAILURE_RETRY_MS = 3_600_000L; // неизвестный ник повторяем не чаще раза в час
+    private static final long SAVE_DELAY_MS = 5_000L;
+
+    private final File file;
+    private final long refreshAfterMs;
+    private final long lookupIntervalMs;
+    private final Map<String, CachedProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<String, Long> failedAt = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // растёт, когда у кого-то появился или сменился профиль; по нему меню пересобирает затронутые головы
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    private volatile boolean closed;
+
+    private static final class CachedProfile {
+        final UUID uuid;
+        final String name;
+        final String textures;
+        final String signature;
+        final long updatedAt;
+        final long stamp; // версия кеша на момент записи
+
+        CachedProfile(UUID uuid, String name, String textures, String signature, long updatedAt, long stamp) {
+            this.uuid = uuid;
+            this.name = name;
+            this.textures = textures;
+            this.signature = signature;
+            this.updatedAt = updatedAt;
+            this.stamp = stamp;
+        }
+
+        PlayerProfile toProfile() {
+            PlayerProfile profile = org.bukkit.Bukkit.createProfile(uuid, name);
+            if (textures != null) {
+                profile.setProperty(signature != null
+                        ? new ProfileProperty("textures", textures, signature)
+                        : new ProfileProperty("textures", textures));
+            }
+            return profile;
+        }
+    }
+
+    public SkullProfileCache(File file, long refreshAfterMs, long lookupIntervalMs) {
+        this.file = file;
+        this.refreshAfterMs = refreshAfterMs;
+        this.lookupIntervalMs = Math.max(0L, lookupIntervalMs);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "TwitchStream-profiles");
+            t.setDaemon(true);
+            return t;
+        });
+        // загрузка — первая задача потока, разрешения из очереди выполнятся уже после неё
+        executor.execute(this::load);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Метка текущего профиля (-1 — профиля нет, нужна заглушка); отсутствующий или устаревший профиль
+    // ставится на разрешение в фоне. Сменилась метка — голову нужно пересобрать
+    public long stamp(String mcName) {
+        String key = StreamerInfo.normalize(mcName);
+        CachedProfile cached = profiles.get(key);
+        long now = System.currentTimeMillis();
+        if (cached == null || now - cached.updatedAt > refreshAfterMs) {
+            requestResolve(key, mcName, now);
+        }
+        return cached != null ? cached.stamp : -1L;
+    }
+
+    // Профиль из кеша или null; никогда не обращается к сети
+    public PlayerProfile get(String mcName) {
+        CachedProfile cached = profiles.get(StreamerInfo.normalize(mcName));
+        return cached != null ? cached.toProfile() : null;
+    }
+
+    // Профиль игрока на сервере уже с текстурами — запоминаем без запроса к Mojang
+    public void remember(String mcName, PlayerProfile profile) {
+        if (profile == null || profile.getId() == null) {
+            return;
+        }
+        String textures = null;
+        String signature = null;
+        for (ProfileProperty property : profile.getProperties()) {
+            if ("textures".equals(property.getName())) {
+                textures = property.getValue();
+                signature = property.getSignature();
+            }
+        }
+        String key = StreamerInfo.normalize(mcName);
+        UUID uuid = profile.getId();
+        String name = profile.getName() != null ? profile.getName() : mcName;
+        CachedProfile previous = profiles.get(key);
+        boolean changed = previous == null || !previous.uuid.equals(uuid) || !Objects.equals(previous.textures, textures);
+        // без изменений — только продлеваем свежесть, метка остаётся прежней и головы не пересобираются
+        long stamp = changed ? version.incrementAndGet() : previous.stamp;
+        profiles.put(key, new CachedProfile(uuid, name, textures, signature, System.currentTimeMillis(), stamp));
+        failedAt.remove(key);
+        dirty.set(true);
+        scheduleSave();
+    }
+
+    private void requestResolve(String key, String mcName, long now) {
+        if (closed) {
+            return;
+        }
+        Long failed = failedAt.get(key);
+        if (failed != null && now - failed < FAILURE_RETRY_MS) {
+            return;
+        }
+        if (pending.add(key)) {
+            try {
+                executor.execute(() -> resolve(key, mcName));
+            } catch (RejectedExecutionException e) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    private void resolve(String key, String mcName) {
+        try {
+            CachedProfile cached = profiles.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.updatedAt <= refreshAfterMs) {
+                return;
+            }
+            PlayerProfile profile = org.bukkit.Bukkit.createProfile(mcName);
+            if (profile.complete(true) && profile.getId() != null) {
+                remember(mcName, profile);
+            } else {
+                failedAt.put(key, System.currentTimeMillis());
+            }
+            // пауза между запросами, чтобы большой ростер не упёрся в лимит Mojang
+            if (lookupIntervalMs > 0L) {
+                Thread.sleep(lookupIntervalMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failedAt.put(key, System.currentTimeMillis());
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Не удалось получить профиль " + mcName + ": " + e);
+        } finally {
+            pending.remove(key);
+        }
+    }
+
+    private void scheduleSave() {
+        if (closed || !saveScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.schedule(() -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            saveScheduled.set(false);
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        ConfigurationSection section = yaml.getConfigurationSection("profiles");
+        if (section == null) {
+            return;
+        }
+        for (String key : section.getKeys(false)) {
+            ConfigurationSection entry = section.getConfigurationSection(key);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                UUID uuid = UUID.fromString(entry.getString("uuid", ""));
+                profiles.putIfAbsent(key, new CachedProfile(uuid, entry.getString("name", key),
+                        entry.getString("textures"), entry.getString("signature"), entry.getLong("updated", 0L), 0L));
+            } catch (IllegalArgumentException e) {
+                System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Невалидная запись в " + file.getName() + ": " + key);
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    private void save() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        YamlConfiguration yaml = new YamlConfiguration();
+        for (Map.Entry<String, CachedProfile> e : profiles.entrySet()) {
+            CachedProfile p = e.getValue();
+            String path = "profiles." + e.getKey();
+            yaml.set(path + ".name", p.name);
+            yaml.set(path + ".uuid", p.uuid.toString());
+            if (p.textures != null) {
+                yaml.set(path + ".textures", p.textures);
+            }
+            if (p.signature != null) {
+                yaml.set(path + ".signature", p.signature);
+            }
+            yaml.set(path + ".updated", p.updatedAt);
+        }
+        try {
+            YamlRosterStorage.writeAtomically(file.toPath(), yaml.saveToString());
+        } catch (IOException e) {
+            dirty.set(true);
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Ошибка сохранения " + file.getName() + ": " + e);
+        }
+    }
+
+    // Прерывает текущий запрос профиля и дописывает кеш на диск
+    public void shutdown() {
+        closed = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+    }
+}
@@ -0,0 +1,67 @@
+package twitch.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/* Кеш статуса эфира по Twitch-логину с TTL; одновременные запросы одного логина ждут один общий HTTP-вызов */
+public class StreamStatusCache {
+    private final long ttlMs;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final boolean live;
+        final long fetchedAtMs;
+
+        Entry(boolean live, long fetchedAtMs) {
+            this.live = live;
+            this.fetchedAtMs = fetchedAtMs;
+        }
+    }
+
+    public StreamStatusCache(long ttlMs) {
+        this.ttlMs = Math.max(0L, ttlMs);
+    }
+
+    // Свежая запись — сразу; иначе один запрос loader на логин. null в результате — статус получить не удалось
+    public CompletableFuture<Boolean> get(String login, Function<String, CompletableFuture<Boolean>> loader) {
+        Entry entry = entries.get(login);
+        if (entry != null && System.currentTimeMillis() - entry.fetchedAtMs < ttlMs) {
+            return CompletableFuture.completedFuture(entry.live);
+        }
+        CompletableFuture<Boolean> promise = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(login, promise);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<Boolean> load;
+        try {
+            load = loader.apply(login);
+        } catch (RuntimeException e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((live, error) -> {
+            if (live != null) {
+                record(login, live);
+            }
+            inFlight.remove(login, promise);
+            if (error != null) {
+                promise.completeExceptionally(error);
+            } else {
+                promise.complete(live);
+            }
+        });
+        return promise;
+    }
+
+    // Результат фоновой проверки или EventSub тоже освежает запись
+    public void record(String login, boolean live) {
+        entries.put(login, new Entry(live, System.currentTimeMillis()));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
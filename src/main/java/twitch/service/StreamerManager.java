@@ -3,25 +3,226 @@ package twitch.service;
 import org.bukkit.configuration.file.FileConfiguration;
 import twitch.model.StreamerInfo;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /* управления стримерами */
 public class StreamerManager {
     private final FileConfiguration config;
-    private final List<StreamerInfo> streamers = Collections.synchronizedList(new ArrayList<>());
-    private final Map<String, Boolean> streamerLiveStatus = new HashMap<>();
 
-    public StreamerManager(FileConfiguration config) {
+    // неизменяемый снимок ростера; читатели не берут блокировок, писатели публикуют новую копию
+    private final AtomicReference<Roster> roster = new AtomicReference<>(Roster.EMPTY);
+    private final Object writeLock = new Object();
+    private final LiveStatusTable liveStatus = new LiveStatusTable();
+    // растёт при каждой смене ростера или статуса эфира; по нему сбрасываются производные кеши (меню)
+    private final AtomicLong version = new AtomicLong();
+    private volatile RosterPersistence persistence;
+    private final RosterStorage importSource;
+    private final java.util.concurrent.ScheduledExecutorService storageExecutor;
+    // игроки на сервере: нормализованный ник -> UUID; меняется только при входе/выходе
+    private final Map<String, UUID> onlinePlayers = new java.util.concurrent.ConcurrentHashMap<>();
+    // стримеры на сервере по UUID игрока; целиком пересчитывается только при смене ростера
+    private final Map<UUID, StreamerInfo> onlineStreamers = new java.util.concurrent.ConcurrentHashMap<>();
+
+    // importSource — откуда перенести ростер, если основное хранилище пустое (иначе — из config.yml)
+    public StreamerManager(FileConfiguration config, RosterStorage storage, RosterStorage importSource,
+                           long saveDelayMs, java.util.concurrent.ScheduledExecutorService storageExecutor) {
         this.config = config;
-        loadStreamersFromConfig();
+        this.importSource = importSource;
+        this.storageExecutor = storageExecutor;
+        this.persistence = new RosterPersistence(storage, this::getStreamers, saveDelayMs, storageExecutor);
+        loadStreamers();
+    }
+
+    /* Снимок ростера с индексами по нормализованному MC-нику, Twitch-логину и ссылке */
+    private static final class Roster {
+        static final Roster EMPTY = new Roster(Collections.emptyList());
+
+        final List<StreamerInfo> list;
+        final Map<String, StreamerInfo> byMcName = new HashMap<>();
+        final Map<String, StreamerInfo> byTwitchName = new HashMap<>();
+        final Map<String, StreamerInfo> byUrl = new HashMap<>();
+        final Map<String, StreamerInfo> byTwitchId = new HashMap<>();
+        final BitSet usedIds = new BitSet();
+
+        Roster(List<StreamerInfo> streamers) {
+            this.list = Collections.unmodifiableList(streamers);
+            for (StreamerInfo info : streamers) {
+                byMcName.putIfAbsent(info.mcKey, info);
+                byTwitchName.putIfAbsent(info.twitchKey, info);
+                byUrl.putIfAbsent(info.urlKey, info);
+                if (info.hasTwitchId()) {
+                    byTwitchId.putIfAbsent(info.twitchId, info);
+                }
+                usedIds.set(info.id);
+            }
+        }
+
+        // та же запись, возможно в более новой версии (например, с разрешённым user_id)
+        boolean contains(StreamerInfo info) {
+            StreamerInfo current = byMcName.get(info.mcKey);
+            return current != null && current.id == info.id;
+        }
+    }
+
+    // Загрузка выполняется в потоке хранилища; до её завершения ростер пуст
+    public void loadStreamers() {
+        persistence.execute(this::loadStreamersNow);
+    }
+
+    // задача в потоке хранилища после загрузки ростера
+    public void afterLoad(Runnable task) {
+        persistence.execute(task);
+    }
+
+    private void loadStreamersNow() {
+        List<StreamerInfo> loaded;
+        try {
+            loaded = persistence.getStorage().load();
+            if (loaded == null && importSource != null) {
+                loaded = importSource.load();
+                if (loaded != null) {
+                    System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Ростер стримеров перенесён в новое хранилище: " + loaded.size() + " записей");
+                    persistence.saveAll();
+                }
+            }
+        } catch (Exception e) {
+            java.io.StringWriter sw = new java.io.StringWriter();
+            e.printStackTrace(new java.io.PrintWriter(sw));
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Ошибка загрузки ростера стримеров: " + sw.toString());
+            loaded = Collections.emptyList();
+        }
+        if (loaded == null) {
+            // первый запуск с отдельным хранилищем ростера: переносим список из config.yml
+            loaded = loadStreamersFromConfig();
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Ростер стримеров перенесён из config.yml: " + loaded.size() + " записей");
+            persistence.saveAll();
+        }
+        List<StreamerInfo> indexed = new ArrayList<>(loaded.size());
+        for (StreamerInfo s : loaded) {
+            indexed.add(new StreamerInfo(indexed.size(), s.mcName, s.twitchName, s.url, s.desc, s.twitchId));
+        }
+        synchronized (writeLock) {
+            liveStatus.clearAll();
+            publish(new Roster(indexed));
+        }
+        if (indexed.isEmpty()) {
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "В результате загрузки не найдено ни одного валидного стримера!");
+        }
+    }
+
+    // /стрим reload: ростер перечитывается из хранилища, применяется только разница.
+    // Неизменённые записи остаются теми же объектами, сохраняя id и статус эфира
+    public void reloadStreamers() {
+        persistence.execute(this::reloadStreamersNow);
+    }
+
+    // Смена хранилища при reload: старое дописывает отложенное и закрывается, ростер сверяется с новым
+    public void replaceStorage(RosterStorage storage, long saveDelayMs) {
+        RosterPersistence old = persistence;
+        persistence = new RosterPersistence(storage, this::getStreamers, saveDelayMs, storageExecutor);
+        old.close();
+        reloadStreamers();
+    }
+
+    private void reloadStreamersNow() {
+        RosterPersistence current = persistence;
+        // ещё не записанные изменения иначе выглядели бы как удалённые из хранилища
+        current.flush();
+        List<StreamerInfo> loaded;
+        try {
+            loaded = current.getStorage().load();
+        } catch (Exception e) {
+            java.io.StringWriter sw = new java.io.StringWriter();
+            e.printStackTrace(new java.io.PrintWriter(sw));
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Ошибка перечитывания ростера, остаётся текущий: " + sw.toString());
+            return;
+        }
+        if (loaded == null) {
+            // новое хранилище ещё не создано — переносим в него текущий ростер
+            current.saveAll();
+            return;
+        }
+        int added = 0;
+        int updated = 0;
+        int removed;
+        synchronized (writeLock) {
+            // изменения, сделанные после flush(), ещё не в хранилище — без наложения они выглядели бы удалёнными
+            loaded = current.withPending(loaded);
+            Roster old = roster.get();
+            // первый проход: записи, которые уже есть, сохраняют id
+            StreamerInfo[] matched = new StreamerInfo[loaded.size()];
+            BitSet usedIds = new BitSet();
+            Set<StreamerInfo> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < loaded.size(); i++) {
+                StreamerInfo existing = old.byMcName.get(loaded.get(i).mcKey);
+                if (existing != null && kept.add(existing)) {
+                    matched[i] = existing;
+                    usedIds.set(existing.id);
+                }
+            }
+            List<StreamerInfo> next = new ArrayList<>(loaded.size());
+            for (int i = 0; i < loaded.size(); i++) {
+                StreamerInfo s = loaded.get(i);
+                StreamerInfo existing = matched[i];
+                if (existing == null) {
+                    int id = usedIds.nextClearBit(0);
+                    usedIds.set(id);
+                    liveStatus.set(id, false);
+                    next.add(new StreamerInfo(id, s.mcName, s.twitchName, s.url, s.desc, s.twitchId));
+                    added++;
+                } else if (sameEntry(existing, s)) {
+                    next.add(existing);
+                } else {
+                    if (!existing.twitchKey.equals(s.twitchKey)) {
+                        // другой канал — статус эфира прежнего не переносится
+                        liveStatus.set(existing.id, false);
+                    }
+                    next.add(new StreamerInfo(existing.id, s.mcName, s.twitchName, s.url, s.desc, s.twitchId));
+                    updated++;
+                }
+            }
+            removed = old.list.size() - kept.size();
+            for (StreamerInfo s : old.list) {
+                if (!kept.contains(s)) {
+                    liveStatus.set(s.id, false);
+                }
+            }
+            if (added > 0 || updated > 0 || removed > 0) {
+                publish(new Roster(next));
+            }
+        }
+        if (added > 0 || updated > 0 || removed > 0) {
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Ростер перечитан: добавлено " + added + ", изменено " + updated + ", удалено " + removed);
+        }
     }
 
-    public void loadStreamersFromConfig() {
+    private static boolean sameEntry(StreamerInfo a, StreamerInfo b) {
+        return a.mcName.equals(b.mcName) && a.twitchName.equals(b.twitchName) && a.url.equals(b.url)
+                && Objects.equals(a.desc, b.desc) && a.twitchId.equals(b.twitchId);
+    }
+
+    // вызывается под writeLock: новый снимок + привязка онлайн-игроков к его записям
+    private void publish(Roster next) {
+        roster.set(next);
+        version.incrementAndGet();
+        for (Map.Entry<String, UUID> e : onlinePlayers.entrySet()) {
+            StreamerInfo info = next.byMcName.get(e.getKey());
+            if (info != null) {
+                onlineStreamers.put(e.getValue(), info);
+            } else {
+                onlineStreamers.remove(e.getValue());
+            }
+        }
+    }
+
+    private List<StreamerInfo> loadStreamersFromConfig() {
+        List<StreamerInfo> loaded = new ArrayList<>();
         List<?> rawList = config.getMapList("twitch.streamers");
         if (rawList == null || rawList.isEmpty()) {
             System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "twitch.streamers отсутствует или пуст. Список стримеров не будет обновлён.");
-            return;
+            return loaded;
         }
-        streamers.clear();
         int invalidCount = 0;
         for (Object obj : rawList) {
             if (obj instanceof Map) {
@@ -30,67 +231,229 @@ public class StreamerManager {
                 String twitch = (String) map.get("twitch");
                 String url = (String) map.get("url");
                 if (mc != null && twitch != null && url != null && !mc.isEmpty() && !twitch.isEmpty() && !url.isEmpty()) {
-                    streamers.add(new StreamerInfo(mc, twitch, url, ""));
+                    loaded.add(new StreamerInfo(loaded.size(), mc, twitch, url, ""));
                 } else {
                     invalidCount++;
                     System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Обнаружена невалидная запись стримера в конфиге: " + map);
                 }
             }
         }
-        if (streamers.isEmpty()) {
-            System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "В результате загрузки не найдено ни одного валидного стримера!");
-        }
         if (invalidCount > 0) {
             System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Количество невалидных записей стримеров: " + invalidCount);
         }
+        return loaded;
     }
 
+    // неизменяемый снимок, безопасен для итерации из любого потока
     public List<StreamerInfo> getStreamers() {
-        return streamers;
+        return roster.get().list;
+    }
+
+    public StreamerInfo findByMcName(String mcName) {
+        return roster.get().byMcName.get(StreamerInfo.normalize(mcName));
     }
 
-    public Map<String, Boolean> getStreamerLiveStatus() {
-        return streamerLiveStatus;
+    public StreamerInfo findByTwitchName(String twitchName) {
+        return roster.get().byTwitchName.get(StreamerInfo.normalize(twitchName));
+    }
+
+    // поиск по MC-нику или Twitch-логину
+    public StreamerInfo findByName(String name) {
+        String key = StreamerInfo.normalize(name);
+        Roster current = roster.get();
+        StreamerInfo info = current.byMcName.get(key);
+        return info != null ? info : current.byTwitchName.get(key);
+    }
+
+    public boolean exists(String mcName, String twitchName, String url) {
+        Roster current = roster.get();
+        return current.byMcName.containsKey(StreamerInfo.normalize(mcName))
+                || current.byTwitchName.containsKey(StreamerInfo.normalize(twitchName))
+                || current.byUrl.containsKey(StreamerInfo.normalize(url));
+    }
+
+    // вход игрока; возвращает его запись в ростере или null
+    public StreamerInfo playerJoined(UUID uuid, String mcName) {
+        String key = StreamerInfo.normalize(mcName);
+        synchronized (writeLock) {
+            onlinePlayers.put(key, uuid);
+            StreamerInfo info = roster.get().byMcName.get(key);
+            if (info != null) {
+                onlineStreamers.put(uuid, info);
+            }
+            return info;
+        }
+    }
+
+    // выход игрока: стример вне сервера не считается в эфире
+    public void playerQuit(UUID uuid, String mcName) {
+        StreamerInfo info;
+        synchronized (writeLock) {
+            onlinePlayers.remove(StreamerInfo.normalize(mcName), uuid);
+            info = onlineStreamers.remove(uuid);
+        }
+        if (info != null) {
+            setLive(info, false);
+        }
+    }
+
+    // стримеры, которые сейчас на сервере; размер — число онлайн-стримеров, а не всего ростера
+    public List<StreamerInfo> getOnlineStreamers() {
+        return new ArrayList<>(onlineStreamers.values());
+    }
+
+    public int getOnlineCount() {
+        return onlineStreamers.size();
+    }
+
+    // онлайн-стример по нормализованному MC-нику или null
+    public StreamerInfo getOnlineStreamer(String mcKey) {
+        UUID uuid = onlinePlayers.get(mcKey);
+        return uuid != null ? onlineStreamers.get(uuid) : null;
+    }
+
+    public boolean isLive(StreamerInfo streamer) {
+        return liveStatus.get(streamer.id);
+    }
+
+    // возвращает предыдущее значение
+    public boolean setLive(StreamerInfo streamer, boolean live) {
+        boolean previous = liveStatus.set(streamer.id, live);
+        if (live && !roster.get().contains(streamer)) {
+            // стример удалён во время проверки — не оставляем бит для переиспользуемого id
+            liveStatus.set(streamer.id, false);
+            return false;
+        }
+        if (previous != live) {
+            version.incrementAndGet();
+        }
+        return previous;
+    }
+
+    // статус из снимка прошлого запуска: без перехода, без записи в хранилище; false — уже в эфире или удалён
+    public boolean restoreLive(StreamerInfo streamer) {
+        if (!roster.get().contains(streamer) || liveStatus.set(streamer.id, true)) {
+            return false;
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public StreamerInfo findByTwitchId(String twitchId) {
+        return roster.get().byTwitchId.get(twitchId);
+    }
+
+    // Twitch-логины без user_id — только их нужно разрешать
+    public List<String> getUnresolvedLogins() {
+        List<String> result = new ArrayList<>();
+        for (StreamerInfo s : roster.get().list) {
+            if (!s.hasTwitchId()) {
+                result.add(s.twitchKey);
+            }
+        }
+        return result;
+    }
+
+    // Запоминает user_id для разрешённых логинов (логин в нижнем регистре -> id); возвращает число обновлённых записей
+    public int updateTwitchIds(Map<String, String> idsByLogin) {
+        List<StreamerInfo> changed = new ArrayList<>();
+        synchronized (writeLock) {
+            Roster current = roster.get();
+            List<StreamerInfo> next = new ArrayList<>(current.list.size());
+            for (StreamerInfo s : current.list) {
+                String twitchId = idsByLogin.get(s.twitchKey);
+                if (twitchId != null && !twitchId.equals(s.twitchId)) {
+                    StreamerInfo updated = new StreamerInfo(s.id, s.mcName, s.twitchName, s.url, s.desc, twitchId);
+                    next.add(updated);
+                    changed.add(updated);
+                } else {
+                    next.add(s);
+                }
+            }
+            if (!changed.isEmpty()) {
+                publish(new Roster(next));
+            }
+            for (StreamerInfo s : changed) {
+                persistence.upserted(s);
+            }
+        }
+        return changed.size();
+    }
+
+    // Канал сменил логин: user_id тот же, обновляем ник и ссылку
+    public StreamerInfo renameTwitch(String twitchId, String newLogin) {
+        StreamerInfo renamed = null;
+        synchronized (writeLock) {
+            Roster current = roster.get();
+            StreamerInfo old = current.byTwitchId.get(twitchId);
+            if (old == null || old.twitchKey.equals(StreamerInfo.normalize(newLogin))) {
+                return null;
+            }
+            List<StreamerInfo> next = new ArrayList<>(current.list.size());
+            for (StreamerInfo s : current.list) {
+                if (s == old) {
+                    renamed = new StreamerInfo(s.id, s.mcName, newLogin, "https://www.twitch.tv/" + newLogin, s.desc, twitchId);
+                    next.add(renamed);
+                } else {
+                    next.add(s);
+                }
+            }
+            publish(new Roster(next));
+            persistence.upserted(renamed);
+            System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Twitch-канал стримера " + old.mcName + " переименован: " + old.twitchName + " -> " + newLogin);
+        }
+        return renamed;
     }
 
     public void addStreamer(String mcName, String twitchName, String url, String desc) {
-        streamers.add(new StreamerInfo(mcName, twitchName, url, desc));
+        StreamerInfo added;
+        synchronized (writeLock) {
+            Roster current = roster.get();
+            int id = current.usedIds.nextClearBit(0);
+            added = new StreamerInfo(id, mcName, twitchName, url, desc);
+            List<StreamerInfo> next = new ArrayList<>(current.list.size() + 1);
+            next.addAll(current.list);
+            next.add(added);
+            liveStatus.set(id, false);
+            publish(new Roster(next));
+            // под writeLock: перечитывание ростера видит изменение либо в снимке, либо в очереди записи
+            persistence.upserted(added);
+        }
         System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Добавлен стример: MC='" + mcName + "' Twitch='" + twitchName + "' URL='" + url + "'");
-        saveStreamersToConfig();
     }
 
     public void removeStreamer(String name) {
-        int before = streamers.size();
-        streamers.removeIf(s -> name.equalsIgnoreCase(s.mcName) || name.equalsIgnoreCase(s.twitchName));
-        int after = streamers.size();
-        if (after < before) {
+        String key = StreamerInfo.normalize(name);
+        boolean removed = false;
+        synchronized (writeLock) {
+            Roster current = roster.get();
+            List<StreamerInfo> next = new ArrayList<>(current.list.size());
+            for (StreamerInfo s : current.list) {
+                if (key.equals(s.mcKey) || key.equals(s.twitchKey)) {
+                    liveStatus.set(s.id, false);
+                    persistence.removed(s);
+                    removed = true;
+                } else {
+                    next.add(s);
+                }
+            }
+            if (removed) {
+                publish(new Roster(next));
+            }
+        }
+        if (removed) {
             System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Удалён стример с ником или Twitch: '" + name + "'");
         } else {
             System.getLogger("TwitchPlugin").log(System.Logger.Level.INFO, "Попытка удалить стримера: '" + name + "', стример не найден.");
         }
-        saveStreamersToConfig();
     }
 
-    private void saveStreamersToConfig() {
-        List<Map<String, Object>> rawList = new ArrayList<>();
-        synchronized (streamers) {
-            for (StreamerInfo s : streamers) {
-                Map<String, Object> map = new HashMap<>();
-                map.put("mc", s.mcName);
-                map.put("twitch", s.twitchName);
-                map.put("url", s.url);
-                rawList.add(map);
-            }
-        }
-        config.set("twitch.streamers", rawList);
-        if (config instanceof org.bukkit.configuration.file.FileConfiguration) {
-            try {
-                ((org.bukkit.configuration.file.FileConfiguration) config).save("plugins/TwitchStream/config.yml");
-            } catch (java.io.IOException e) {
-                java.io.StringWriter sw = new java.io.StringWriter();
-                e.printStackTrace(new java.io.PrintWriter(sw));
-                System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Ошибка сохранения конфига стримеров: " + sw.toString());
-            }
-        }
+    // дописывает отложенные изменения ростера; вызывается при выключении и перезагрузке
+    public void shutdown() {
+        persistence.close();
     }
 }
@@ -1,42 +1,44 @@
 package twitch.service;
 
-import org.bukkit.Bukkit;
-import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.configuration.file.FileConfiguration;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
 import twitch.model.StreamerInfo;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 /* Дублирующий анонс стримеров */
 public class TwitchAnnounceTask implements Runnable {
-    private final JavaPlugin plugin;
     private final StreamerManager streamerManager;
+    private final BroadcastDispatcher broadcastDispatcher;
+    private final MessageTemplates messageTemplates;
 
-    public TwitchAnnounceTask(JavaPlugin plugin, StreamerManager streamerManager) {
-        this.plugin = plugin;
+    public TwitchAnnounceTask(StreamerManager streamerManager, BroadcastDispatcher broadcastDispatcher, MessageTemplates messageTemplates) {
         this.streamerManager = streamerManager;
+        this.broadcastDispatcher = broadcastDispatcher;
+        this.messageTemplates = messageTemplates;
     }
 
     @Override
     public void run() {
-        Map<String, Boolean> liveStatus = streamerManager.getStreamerLiveStatus();
-        List<StreamerInfo> liveStreamers = streamerManager.getStreamers().stream()
-                .filter(s -> liveStatus.getOrDefault(s.twitchName.toLowerCase(), false))
-                .collect(Collectors.toList());
-        if (!liveStreamers.isEmpty()) {
-            for (StreamerInfo s : liveStreamers) {
-                if (Bukkit.getPlayerExact(s.mcName) != null) {
-                    String msg = plugin.getConfig().getString("messages.stream_repeat_broadcast", "{player} стрим: {link}")
-                            .replace("{player}", s.mcName)
-                            .replace("{link}", s.url);
-                    for (org.bukkit.entity.Player p : org.bukkit.Bukkit.getOnlinePlayers()) {
-                        Bukkit.getRegionScheduler().run(plugin, p.getLocation(), task -> {
-                            p.sendMessage(org.bukkit.ChatColor.translateAlternateColorCodes('&', msg));
-                        });
-                    }
-                }
+        Component announcement = buildAnnouncement();
+        if (announcement != null) {
+            broadcastDispatcher.broadcast(announcement);
+        }
+    }
+
+    // Все стримеры в эфире — одним сообщением за цикл; null, если никто не в эфире
+    public Component buildAnnouncement() {
+        MessageTemplate template = messageTemplates.get("stream_repeat_broadcast");
+        List<Component> lines = new ArrayList<>();
+        for (StreamerInfo s : streamerManager.getOnlineStreamers()) {
+            if (streamerManager.isLive(s)) {
+                // строка стримера отрисована один раз и берётся из кеша шаблона
+                lines.add(template.render(s));
             }
         }
+        if (lines.isEmpty()) {
+            return null;
+        }
+        return Component.join(JoinConfiguration.newlines(), lines);
     }
 }
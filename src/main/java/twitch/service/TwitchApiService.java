@@ -1,18 +1,42 @@
 package twitch.service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import twitch.model.HelixStreamsResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 /* Twitch API */
 public class TwitchApiService {
-    private final String clientId;
-    private final String oauthToken;
+    // client_id и токен меняются вместе при /стрим reload; запрос читает пару один раз
+    private volatile Credentials credentials;
     private final Logger logger;
+    private final long connectTimeoutMs;
+    private final long requestTimeoutMs;
+
+    // Неблокирующий клиент: одно HTTP/2 соединение к api.twitch.tv на все запросы
+    private final ExecutorService httpExecutor;
+    private final HttpClient httpClient;
+    private final RequestScheduler requestScheduler;
+    private volatile MetricsRegistry metrics;
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 5_000L;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MS = 10_000L;
 
     private static final long RATE_LIMIT_LOG_THROTTLE_MS = 60_000L;
     private static volatile long lastRateLimitLogTimeMs = 0L;
@@ -28,9 +52,88 @@ public class TwitchApiService {
     private static volatile String lastRateLimitReset = "";
 
     public TwitchApiService(String clientId, String oauthToken, Logger logger) {
-        this.clientId = clientId;
-        this.oauthToken = oauthToken;
+        this(clientId, oauthToken, logger, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_REQUEST_TIMEOUT_MS);
+    }
+
+    public TwitchApiService(String clientId, String oauthToken, Logger logger, long connectTimeoutMs, long requestTimeoutMs) {
+        this(clientId, oauthToken, logger, connectTimeoutMs, requestTimeoutMs, RequestScheduler.DEFAULT_LIMIT, 0);
+    }
+
+    public TwitchApiService(String clientId, String oauthToken, Logger logger, long connectTimeoutMs, long requestTimeoutMs,
+                            int defaultRateLimit, int lowPriorityReserve) {
+        this.credentials = new Credentials(clientId, oauthToken);
         this.logger = logger;
+        this.connectTimeoutMs = connectTimeoutMs > 0L ? connectTimeoutMs : DEFAULT_CONNECT_TIMEOUT_MS;
+        this.requestTimeoutMs = requestTimeoutMs > 0L ? requestTimeoutMs : DEFAULT_REQUEST_TIMEOUT_MS;
+        this.httpExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "TwitchStream-http");
+            t.setDaemon(true);
+            return t;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(this.connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(httpExecutor)
+                .build();
+        this.requestScheduler = new RequestScheduler(logger, defaultRateLimit, lowPriorityReserve);
+    }
+
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    private static final class Credentials {
+        final String clientId;
+        final String oauthToken;
+
+        Credentials(String clientId, String oauthToken) {
+            this.clientId = clientId;
+            this.oauthToken = oauthToken;
+        }
+    }
+
+    // новые ключи из config.yml; клиенты, очереди и лимиты остаются прежними
+    public void updateCredentials(String clientId, String oauthToken) {
+        this.credentials = new Credentials(clientId, oauthToken);
+    }
+
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    // https://api.twitch.tv/helix/streams?user_login=... -> /helix/streams
+    static String endpointPath(String endpoint) {
+        int scheme = endpoint.indexOf("://");
+        int start = endpoint.indexOf('/', scheme < 0 ? 0 : scheme + 3);
+        if (start < 0) {
+            return "/";
+        }
+        int query = endpoint.indexOf('?', start);
+        return query < 0 ? endpoint.substring(start) : endpoint.substring(start, query);
+    }
+
+    // Код 0 — запрос не дошёл до ответа (таймаут, обрыв соединения)
+    private void recordRequest(String endpoint, long startNanos, int status) {
+        MetricsRegistry m = metrics;
+        if (m == null) {
+            return;
+        }
+        String path = endpointPath(endpoint);
+        m.increment("twitch_api_requests_total", "endpoint", path, "status", status == 0 ? "error" : Integer.toString(status));
+        m.observeSince("twitch_api_request_duration_ms", MetricsRegistry.API_LATENCY_BUCKETS_MS, startNanos, "endpoint", path);
+    }
+
+    private void countMetric(String name) {
+        MetricsRegistry m = metrics;
+        if (m != null) {
+            m.increment(name);
+        }
+    }
+
+    public void shutdown() {
+        requestScheduler.shutdown();
+        httpExecutor.shutdownNow();
     }
 
     private static long parseResetEpochSecondsToMs(String resetHeader) {
@@ -48,15 +151,8 @@ public class TwitchApiService {
         }
     }
 
-    private static String buildRateLimitJson(String limit, String remaining, String reset) {
-        return "{\"error\": \"rate_limit\", \"code\": 429," +
-                " \"ratelimit_limit\": \"" + (limit == null ? "" : limit) + "\"," +
-                " \"ratelimit_remaining\": \"" + (remaining == null ? "" : remaining) + "\"," +
-                " \"ratelimit_reset\": \"" + (reset == null ? "" : reset) + "\"," +
-                " \"message\": \"Превышен лимит запросов к Twitch API. Попробуйте позже.\"}";
-    }
-
-    private static void rememberRateLimitHeaders(String limit, String remaining, String reset) {
+    private void rememberRateLimitHeaders(String limit, String remaining, String reset) {
+        requestScheduler.onHeaders(limit, remaining, reset);
         if (limit != null) {
             lastRateLimitLimit = limit;
         }
@@ -80,8 +176,8 @@ public class TwitchApiService {
         return lastRateLimitReset;
     }
 
-    public String sendGetRequest(String endpoint) throws Exception {
-        long nowBeforeRequest = System.currentTimeMillis();
+    // Время окончания backoff (мс) или 0, если запрос можно отправлять
+    private long rateLimitBackoffUntil(String endpoint, long nowBeforeRequest) {
         long retryAfter = rateLimitRetryAfterMs;
         if (retryAfter > 0L && nowBeforeRequest < retryAfter) {
             long remainingMs = retryAfter - nowBeforeRequest;
@@ -99,111 +195,381 @@ public class TwitchApiService {
                         (lastRateLimitReset != null && !lastRateLimitReset.isEmpty() ? (" last_reset=" + lastRateLimitReset) : ""));
             }
 
-            return buildRateLimitJson("", "0", String.valueOf(retryAfter / 1000L));
+            countMetric("twitch_api_backoff_skipped_total");
+            return retryAfter;
         }
+        return 0L;
+    }
+
+    private void logRealRequest(String endpoint, long nowBeforeRequest) {
+        Long last = lastRequestLogTimeMs.get(endpoint);
+        if (last == null || nowBeforeRequest - last > REQUEST_LOG_THROTTLE_MS) {
+            lastRequestLogTimeMs.put(endpoint, nowBeforeRequest);
+            logger.info("[TWITCH API] Реальный HTTP запрос: endpoint=" + endpoint);
+        }
+    }
+
+    // 429: включаем backoff до Ratelimit-Reset
+    private void registerRateLimitHit(String limitHdr, String remainingHdr, String resetHdr) {
+        long resetAtMs = parseResetEpochSecondsToMs(resetHdr);
+        if (resetAtMs > 0L) {
+            rateLimitRetryAfterMs = resetAtMs + RATE_LIMIT_SAFETY_BUFFER_MS;
+        } else {
+            rateLimitRetryAfterMs = System.currentTimeMillis() + 30_000L;
+        }
+        requestScheduler.onRateLimited(rateLimitRetryAfterMs);
+        countMetric("twitch_api_rate_limited_total");
+
+        long now = System.currentTimeMillis();
+        if (now - lastRateLimitLogTimeMs > RATE_LIMIT_LOG_THROTTLE_MS) {
+            lastRateLimitLogTimeMs = now;
+            String details = "limit=" + (limitHdr == null ? "?" : limitHdr) +
+                    " remaining=" + (remainingHdr == null ? "?" : remainingHdr) +
+                    " reset=" + (resetHdr == null ? "?" : resetHdr);
+            logger.warning("[TWITCH API] Превышен лимит запросов к Twitch API (429 Too Many Requests). " + details);
+        }
+    }
+
+    private void handleException(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        String msg = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+        if (cause instanceof java.net.ConnectException ||
+            cause instanceof java.net.UnknownHostException ||
+            cause instanceof java.net.SocketTimeoutException ||
+            cause instanceof java.net.http.HttpTimeoutException ||
+            cause instanceof javax.net.ssl.SSLException ||
+            msg.toLowerCase().contains("timed out") ||
+            msg.toLowerCase().contains("connection refused")) {
+            logger.info("[TWITCH API] Временная ошибка подключения: " + msg);
+        } else {
+            logger.warning("[TWITCH API] Ошибка подключения к Twitch API: " + msg);
+        }
+    }
+
+    // Ждёт токен планировщика в вызывающем потоке; get(), а не join(): прерывание при остановке пула освобождает поток
+    private void awaitToken(RequestScheduler.Priority priority) throws Exception {
         try {
-            URL url = new URL(endpoint);
+            requestScheduler.acquire(priority).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
 
-            Long last = lastRequestLogTimeMs.get(endpoint);
-            if (last == null || nowBeforeRequest - last > REQUEST_LOG_THROTTLE_MS) {
-                lastRequestLogTimeMs.put(endpoint, nowBeforeRequest);
-                logger.info("[TWITCH API] Реальный HTTP запрос: endpoint=" + endpoint);
-            }
+    // Блокирующий GET через HttpURLConnection: авторизация, gzip, метрика запроса, заголовки Ratelimit-*
+    private HelixStreamsResult executeGet(String endpoint, long nowBeforeRequest) throws IOException {
+        URL url = new URL(endpoint);
+        logRealRequest(endpoint, nowBeforeRequest);
+        long startNanos = System.nanoTime();
+
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout((int) connectTimeoutMs);
+        conn.setReadTimeout((int) requestTimeoutMs);
+        Credentials auth = credentials;
+        conn.setRequestProperty("Client-Id", auth.clientId);
+        conn.setRequestProperty("Authorization", "Bearer " + auth.oauthToken);
+        conn.setRequestProperty("Accept-Encoding", "gzip");
 
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Client-Id", clientId);
-            conn.setRequestProperty("Authorization", "Bearer " + oauthToken);
+        int responseCode;
+        try {
+            responseCode = conn.getResponseCode();
+        } catch (IOException e) {
+            recordRequest(endpoint, startNanos, 0);
+            throw e;
+        }
+        recordRequest(endpoint, startNanos, responseCode);
+        boolean gzip = "gzip".equalsIgnoreCase(conn.getContentEncoding());
+        return toStreamsResult(responseCode,
+                conn.getHeaderField("Ratelimit-Limit"),
+                conn.getHeaderField("Ratelimit-Remaining"),
+                conn.getHeaderField("Ratelimit-Reset"),
+                decode(responseCode >= 400 ? conn.getErrorStream() : conn.getInputStream(), gzip));
+    }
 
-            int responseCode = conn.getResponseCode();
-            String limitHdr = conn.getHeaderField("Ratelimit-Limit");
-            String remainingHdr = conn.getHeaderField("Ratelimit-Remaining");
-            String resetHdr = conn.getHeaderField("Ratelimit-Reset");
-            rememberRateLimitHeaders(limitHdr, remainingHdr, resetHdr);
+    private HttpRequest newGetRequest(String endpoint) {
+        Credentials auth = credentials;
+        return HttpRequest.newBuilder(URI.create(endpoint))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Client-Id", auth.clientId)
+                .header("Authorization", "Bearer " + auth.oauthToken)
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+    }
+
+    // HttpRequest.timeout ограничивает только ожидание заголовков; здесь общий срок на ответ вместе с телом.
+    // По истечении обмен отменяется, а future завершается HttpTimeoutException
+    private <T> CompletableFuture<HttpResponse<T>> sendWithDeadline(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        CompletableFuture<HttpResponse<T>> exchange = httpClient.sendAsync(request, bodyHandler);
+        long deadlineMs = connectTimeoutMs + requestTimeoutMs;
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        exchange.whenComplete((response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (error instanceof java.util.concurrent.CancellationException) {
+                result.completeExceptionally(new java.net.http.HttpTimeoutException("ответ не получен за " + deadlineMs + " мс"));
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        CompletableFuture.delayedExecutor(deadlineMs, java.util.concurrent.TimeUnit.MILLISECONDS)
+                .execute(() -> exchange.cancel(true));
+        return result;
+    }
+
+    private static InputStream decode(InputStream in, boolean gzip) throws IOException {
+        if (in == null) {
+            return InputStream.nullInputStream();
+        }
+        return gzip ? new GZIPInputStream(in) : in;
+    }
 
+    // Разбор ответа /helix/streams прямо из потока, без промежуточной строки тела
+    private HelixStreamsResult toStreamsResult(int responseCode, String limitHdr, String remainingHdr, String resetHdr, InputStream body) throws IOException {
+        rememberRateLimitHeaders(limitHdr, remainingHdr, resetHdr);
+        try (java.io.Reader reader = new java.io.InputStreamReader(body, StandardCharsets.UTF_8)) {
             if (responseCode == 429) {
-                String limit = limitHdr;
-                String remaining = remainingHdr;
-                String reset = resetHdr;
-
-                long resetAtMs = parseResetEpochSecondsToMs(reset);
-                if (resetAtMs > 0L) {
-                    rateLimitRetryAfterMs = resetAtMs + RATE_LIMIT_SAFETY_BUFFER_MS;
-                } else {
-                    rateLimitRetryAfterMs = System.currentTimeMillis() + 30_000L;
-                }
-
-                long now = System.currentTimeMillis();
-                if (now - lastRateLimitLogTimeMs > RATE_LIMIT_LOG_THROTTLE_MS) {
-                    lastRateLimitLogTimeMs = now;
-                    String details = "limit=" + (limit == null ? "?" : limit) +
-                            " remaining=" + (remaining == null ? "?" : remaining) +
-                            " reset=" + (reset == null ? "?" : reset);
-                    logger.warning("[TWITCH API] Превышен лимит запросов к Twitch API (429 Too Many Requests). " + details);
-                }
-
-                return buildRateLimitJson(limit, remaining, reset);
+                registerRateLimitHit(limitHdr, remainingHdr, resetHdr);
+                return HelixStreamsResult.rateLimited(resetHdr);
             } else if (responseCode == 401 || responseCode == 403) {
-                // Ошибка при авторизации API
-                try (BufferedReader err = new BufferedReader(new InputStreamReader(conn.getErrorStream()))) {
-                    StringBuilder errorResponse = new StringBuilder();
-                    String line;
-                    while ((line = err.readLine()) != null) {
-                        errorResponse.append(line);
-                    }
-                    logger.warning("[TWITCH API] Ошибка авторизации (" + responseCode + "): " + errorResponse);
-                    return "{\"error\": \"auth_error\", \"code\": " + responseCode + ", \"message\": \"" + errorResponse + "\"}";
-                }
+                String message = HelixStreamParser.parseErrorMessage(reader);
+                logger.warning("[TWITCH API] Ошибка авторизации (" + responseCode + "): " + message);
+                return HelixStreamsResult.httpError(HelixStreamsResult.Status.AUTH_ERROR, responseCode, message);
             } else if (responseCode >= 400) {
-                // Другие возможные ошибки API
-                try (BufferedReader err = new BufferedReader(new InputStreamReader(conn.getErrorStream()))) {
-                    StringBuilder errorResponse = new StringBuilder();
-                    String line;
-                    while ((line = err.readLine()) != null) {
-                        errorResponse.append(line);
-                    }
-                    logger.warning("[TWITCH API] Ошибка " + responseCode + ": " + errorResponse);
-                    return "{\"error\": \"http_error\", \"code\": " + responseCode + ", \"message\": \"" + errorResponse + "\"}";
-                }
-            }
-            // успешный поток
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                String inputLine;
-                StringBuilder response = new StringBuilder();
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-                return response.toString();
+                String message = HelixStreamParser.parseErrorMessage(reader);
+                logger.warning("[TWITCH API] Ошибка " + responseCode + ": " + message);
+                return HelixStreamsResult.httpError(HelixStreamsResult.Status.HTTP_ERROR, responseCode, message);
             }
+            return HelixStreamsResult.ok(HelixStreamParser.parseStreams(reader));
+        }
+    }
+
+    public HelixStreamsResult fetchStreams(String endpoint) {
+        return fetchStreams(endpoint, RequestScheduler.Priority.LOW);
+    }
+
+    // Блокирующий запрос: ждёт токен планировщика в вызывающем потоке
+    public HelixStreamsResult fetchStreams(String endpoint, RequestScheduler.Priority priority) {
+        try {
+            awaitToken(priority);
         } catch (Exception e) {
-            Throwable cause = e.getCause() != null ? e.getCause() : e;
-            String msg = cause.getMessage() != null ? cause.getMessage() : cause.toString();
-            if (cause instanceof java.net.ConnectException ||
-                cause instanceof java.net.UnknownHostException ||
-                cause instanceof java.net.SocketTimeoutException ||
-                cause instanceof javax.net.ssl.SSLException ||
-                msg.toLowerCase().contains("timed out") ||
-                msg.toLowerCase().contains("connection refused")) {
-                logger.info("[TWITCH API] Временная ошибка подключения: " + msg);
-            } else {
-                logger.warning("[TWITCH API] Ошибка подключения к Twitch API: " + msg);
-            }
-            return "{\"error\": \"exception\", \"message\": \"" + msg.replace("\"", "'") + "\"}";
+            return HelixStreamsResult.exception(e);
+        }
+        long nowBeforeRequest = System.currentTimeMillis();
+        long backoffUntil = rateLimitBackoffUntil(endpoint, nowBeforeRequest);
+        if (backoffUntil > 0L) {
+            return HelixStreamsResult.rateLimited(String.valueOf(backoffUntil / 1000L));
+        }
+        try {
+            return executeGet(endpoint, nowBeforeRequest);
+        } catch (Exception e) {
+            return HelixStreamsResult.exception(e);
         }
     }
 
-    public void validateConnection() {
+    public CompletableFuture<HelixStreamsResult> fetchStreamsAsync(String endpoint) {
+        return fetchStreamsAsync(endpoint, RequestScheduler.Priority.LOW);
+    }
+
+    public CompletableFuture<HelixStreamsResult> fetchStreamsAsync(String endpoint, RequestScheduler.Priority priority) {
+        return requestScheduler.acquire(priority)
+                .thenCompose(ignored -> doFetchStreamsAsync(endpoint))
+                .exceptionally(e -> HelixStreamsResult.exception(e.getCause() != null ? e.getCause() : e));
+    }
+
+    private CompletableFuture<HelixStreamsResult> doFetchStreamsAsync(String endpoint) {
+        long nowBeforeRequest = System.currentTimeMillis();
+        long backoffUntil = rateLimitBackoffUntil(endpoint, nowBeforeRequest);
+        if (backoffUntil > 0L) {
+            return CompletableFuture.completedFuture(HelixStreamsResult.rateLimited(String.valueOf(backoffUntil / 1000L)));
+        }
+        HttpRequest request;
         try {
-            String response = sendGetRequest("https://api.twitch.tv/helix/users");
-            logger.info("[TWITCH API][DEBUG] Ответ от Twitch: " + response);
-            if (response.contains("id") && response.contains("login")) {
-                logger.info("[TWITCH API] Подключение к Twitch API успешно!");
+            request = newGetRequest(endpoint);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(HelixStreamsResult.exception(e));
+        }
+        logRealRequest(endpoint, nowBeforeRequest);
+        long startNanos = System.nanoTime();
+        // тело целиком в памяти: разбор не блокирует потоки клиента на чтении сети
+        return sendWithDeadline(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> recordRequest(endpoint, startNanos, response != null ? response.statusCode() : 0))
+                .thenApply(response -> {
+                    java.net.http.HttpHeaders headers = response.headers();
+                    boolean gzip = headers.firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
+                    try {
+                        return toStreamsResult(response.statusCode(),
+                                headers.firstValue("Ratelimit-Limit").orElse(null),
+                                headers.firstValue("Ratelimit-Remaining").orElse(null),
+                                headers.firstValue("Ratelimit-Reset").orElse(null),
+                                decode(new ByteArrayInputStream(response.body()), gzip));
+                    } catch (IOException e) {
+                        return HelixStreamsResult.exception(e);
+                    }
+                })
+                .exceptionally(e -> HelixStreamsResult.exception(e.getCause() != null ? e.getCause() : e));
+    }
+
+    // login -> user_id через /helix/users, до 100 логинов на запрос. Ошибка любого запроса завершает
+    // результат исключением: пустая карта означает только то, что Twitch не знает ни одного логина
+    public CompletableFuture<Map<String, String>> resolveUserIdsAsync(java.util.Collection<String> logins) {
+        return fetchUsersAsync("login", logins);
+    }
+
+    // user_id -> текущий login (для обнаружения переименований), до 100 id на запрос
+    public CompletableFuture<Map<String, String>> resolveLoginsAsync(java.util.Collection<String> userIds) {
+        return fetchUsersAsync("id", userIds).thenApply(idsByLogin -> {
+            Map<String, String> result = new java.util.HashMap<>();
+            for (Map.Entry<String, String> e : idsByLogin.entrySet()) {
+                result.put(e.getValue(), e.getKey());
+            }
+            return result;
+        });
+    }
+
+    private CompletableFuture<Map<String, String>> fetchUsersAsync(String param, java.util.Collection<String> values) {
+        java.util.List<CompletableFuture<Map<String, String>>> parts = new java.util.ArrayList<>();
+        StringBuilder endpoint = null;
+        int inBatch = 0;
+        for (String value : values) {
+            if (endpoint == null) {
+                endpoint = new StringBuilder("https://api.twitch.tv/helix/users?");
             } else {
-                logger.warning("[TWITCH API] Не удалось получить валидный ответ от Twitch API. Проверьте токен и client_id.");
+                endpoint.append('&');
+            }
+            endpoint.append(param).append('=').append(value);
+            if (++inBatch == 100) {
+                parts.add(fetchUserIds(endpoint.toString()));
+                endpoint = null;
+                inBatch = 0;
             }
+        }
+        if (endpoint != null) {
+            parts.add(fetchUserIds(endpoint.toString()));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Map<String, String> result = new java.util.HashMap<>();
+            for (CompletableFuture<Map<String, String>> part : parts) {
+                result.putAll(part.join());
+            }
+            return result;
+        });
+    }
+
+    private CompletableFuture<Map<String, String>> fetchUserIds(String endpoint) {
+        return requestScheduler.acquire(RequestScheduler.Priority.LOW).thenCompose(ignored -> doFetchUserIds(endpoint));
+    }
+
+    private CompletableFuture<Map<String, String>> doFetchUserIds(String endpoint) {
+        long nowBeforeRequest = System.currentTimeMillis();
+        if (rateLimitBackoffUntil(endpoint, nowBeforeRequest) > 0L) {
+            return CompletableFuture.failedFuture(new HelixStatusException("лимит запросов Twitch API исчерпан"));
+        }
+        logRealRequest(endpoint, nowBeforeRequest);
+        long startNanos = System.nanoTime();
+        return sendWithDeadline(newGetRequest(endpoint), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> recordRequest(endpoint, startNanos, response != null ? response.statusCode() : 0))
+                .thenApply(response -> {
+                    java.net.http.HttpHeaders headers = response.headers();
+                    rememberRateLimitHeaders(headers.firstValue("Ratelimit-Limit").orElse(null),
+                            headers.firstValue("Ratelimit-Remaining").orElse(null),
+                            headers.firstValue("Ratelimit-Reset").orElse(null));
+                    boolean gzip = headers.firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
+                    try (java.io.Reader reader = new java.io.InputStreamReader(decode(new ByteArrayInputStream(response.body()), gzip), StandardCharsets.UTF_8)) {
+                        if (response.statusCode() == 429) {
+                            registerRateLimitHit(headers.firstValue("Ratelimit-Limit").orElse(null),
+                                    headers.firstValue("Ratelimit-Remaining").orElse(null),
+                                    headers.firstValue("Ratelimit-Reset").orElse(null));
+                            throw new java.util.concurrent.CompletionException(new HelixStatusException("HTTP 429 при запросе пользователей"));
+                        }
+                        if (response.statusCode() >= 400) {
+                            String message = HelixStreamParser.parseErrorMessage(reader);
+                            logger.warning("[TWITCH API] Ошибка " + response.statusCode() + " при запросе пользователей: " + message);
+                            throw new java.util.concurrent.CompletionException(new HelixStatusException("HTTP " + response.statusCode() + ": " + message));
+                        }
+                        return HelixStreamParser.parseUserIds(reader);
+                    } catch (IOException e) {
+                        throw new java.util.concurrent.CompletionException(e);
+                    }
+                })
+                .whenComplete((result, e) -> {
+                    // ответы с кодом ошибки уже залогированы выше
+                    if (e != null && !(e.getCause() instanceof HelixStatusException)) {
+                        handleException(e);
+                    }
+                });
+    }
+
+    // Twitch ответил кодом ошибки: запрос не выполнен, но это не сбой соединения
+    private static final class HelixStatusException extends IOException {
+        HelixStatusException(String message) {
+            super(message);
+        }
+    }
+
+    // POST с JSON-телом; результат — HTTP-код ответа (0 при ошибке соединения)
+    public CompletableFuture<Integer> sendPostRequestAsync(String endpoint, String jsonBody) {
+        return requestScheduler.acquire(RequestScheduler.Priority.LOW).thenCompose(ignored -> doSendPostRequestAsync(endpoint, jsonBody));
+    }
+
+    private CompletableFuture<Integer> doSendPostRequestAsync(String endpoint, String jsonBody) {
+        HttpRequest request;
+        try {
+            Credentials auth = credentials;
+            request = HttpRequest.newBuilder(URI.create(endpoint))
+                    .timeout(Duration.ofMillis(requestTimeoutMs))
+                    .header("Client-Id", auth.clientId)
+                    .header("Authorization", "Bearer " + auth.oauthToken)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8))
+                    .build();
         } catch (Exception e) {
-            logger.warning("[TWITCH API][DEBUG] Ошибка: " + e);
-            logger.warning("[TWITCH API] Ошибка подключения к Twitch API: " + e.getMessage());
+            handleException(e);
+            return CompletableFuture.completedFuture(0);
+        }
+        long startNanos = System.nanoTime();
+        return sendWithDeadline(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .whenComplete((response, error) -> recordRequest(endpoint, startNanos, response != null ? response.statusCode() : 0))
+                .thenApply(response -> {
+                    java.net.http.HttpHeaders headers = response.headers();
+                    rememberRateLimitHeaders(headers.firstValue("Ratelimit-Limit").orElse(null),
+                            headers.firstValue("Ratelimit-Remaining").orElse(null),
+                            headers.firstValue("Ratelimit-Reset").orElse(null));
+                    if (response.statusCode() >= 400 && response.statusCode() != 409) {
+                        logger.warning("[TWITCH API] Ошибка " + response.statusCode() + " POST " + endpoint + ": " + response.body());
+                    }
+                    return response.statusCode();
+                })
+                .exceptionally(e -> {
+                    handleException(e);
+                    return 0;
+                });
+    }
+
+    HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    // Проверка client_id и токена: один /helix/streams через планировщик, исход по типизированному результату
+    public void validateConnection() {
+        HelixStreamsResult result = fetchStreams("https://api.twitch.tv/helix/streams?first=1");
+        switch (result.status) {
+            case OK:
+                logger.info("[TWITCH API] Подключение к Twitch API успешно!");
+                break;
+            case AUTH_ERROR:
+                logger.warning("[TWITCH API] Ошибка авторизации (" + result.httpCode + "): " + result.message + ". Проверьте токен и client_id.");
+                break;
+            case RATE_LIMIT:
+                logger.warning("[TWITCH API] Проверка подключения отложена: превышен лимит запросов, сброс " + result.message);
+                break;
+            case HTTP_ERROR:
+                logger.warning("[TWITCH API] Не удалось получить валидный ответ от Twitch API (" + result.httpCode + "): " + result.message);
+                break;
+            default:
+                handleException(result.error);
+                break;
         }
     }
 }
@@ -0,0 +1,117 @@
+package twitch.service;
+
+import twitch.model.StreamerInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/* Разрешение Twitch-логинов в user_id пачками по 100; id сохраняются в ростере, переименования находятся по id */
+public class UserIdResolver {
+    private static final long NOT_FOUND_RETRY_MS = 60 * 60_000L;
+    private static final long MAX_NOT_FOUND_RETRY_MS = 24 * 60 * 60_000L;
+
+    private final TwitchApiService api;
+    private final StreamerManager streamerManager;
+    private final Logger logger;
+    // логины, которых нет в Twitch: следующий запрос не раньше retryAt, пауза удваивается до суток
+    private final Map<String, NotFound> notFound = new ConcurrentHashMap<>();
+    private final AtomicBoolean resolving = new AtomicBoolean(false);
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    public UserIdResolver(TwitchApiService api, StreamerManager streamerManager, Logger logger) {
+        this.api = api;
+        this.streamerManager = streamerManager;
+        this.logger = logger;
+    }
+
+    // Разрешает только записи без user_id (новые или добавленные с прошлого запуска)
+    public void resolvePending() {
+        long now = System.currentTimeMillis();
+        List<String> logins = new ArrayList<>();
+        for (String login : streamerManager.getUnresolvedLogins()) {
+            NotFound missed = notFound.get(login);
+            if (missed == null || now >= missed.retryAt) {
+                logins.add(login);
+            }
+        }
+        if (logins.isEmpty() || !resolving.compareAndSet(false, true)) {
+            return;
+        }
+        api.resolveUserIdsAsync(logins).whenComplete((idsByLogin, error) -> {
+            try {
+                // ошибка запроса: повторим в следующий период, отсутствие каналов не подтверждено
+                if (idsByLogin == null) {
+                    return;
+                }
+                int updated = streamerManager.updateTwitchIds(idsByLogin);
+                if (updated > 0) {
+                    logger.info("[TWITCH API] Получены user_id для " + updated + " стримеров");
+                }
+                // успешный ответ без логина (в том числе пустой) — канала нет в Twitch
+                for (String login : logins) {
+                    if (idsByLogin.containsKey(login)) {
+                        notFound.remove(login);
+                        continue;
+                    }
+                    NotFound previous = notFound.get(login);
+                    long delayMs = previous == null ? NOT_FOUND_RETRY_MS : Math.min(MAX_NOT_FOUND_RETRY_MS, previous.delayMs * 2);
+                    notFound.put(login, new NotFound(now + delayMs, delayMs));
+                    if (previous == null) {
+                        logger.warning("[TWITCH API] Twitch-канал не найден: " + login);
+                    }
+                }
+            } finally {
+                resolving.set(false);
+            }
+        });
+    }
+
+    // Сверка логинов по известным id: одна пачка /helix/users на 100 стримеров
+    public void refreshLogins() {
+        List<String> ids = new ArrayList<>();
+        for (StreamerInfo s : streamerManager.getStreamers()) {
+            if (s.hasTwitchId()) {
+                ids.add(s.twitchId);
+            }
+        }
+        if (ids.isEmpty() || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        api.resolveLoginsAsync(ids).whenComplete((loginsById, error) -> {
+            try {
+                if (loginsById != null) {
+                    for (Map.Entry<String, String> e : loginsById.entrySet()) {
+                        onLoginSeen(e.getKey(), e.getValue());
+                    }
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    // Текущий логин канала (из /streams или /users); отличие от ростера — переименование
+    public void onLoginSeen(String twitchId, String login) {
+        if (twitchId == null || login == null || login.isEmpty()) {
+            return;
+        }
+        StreamerInfo known = streamerManager.findByTwitchId(twitchId);
+        if (known != null && !known.twitchKey.equals(StreamerInfo.normalize(login))) {
+            streamerManager.renameTwitch(twitchId, login);
+        }
+    }
+
+    private static final class NotFound {
+        final long retryAt;
+        final long delayMs;
+
+        NotFound(long retryAt, long delayMs) {
+            this.retryAt = retryAt;
+            this.delayMs = delayMs;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package twitch.service;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import twitch.model.StreamerInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Ростер в отдельном файле plugins/TwitchStream/streamers.yml; запись через временный файл и атомарную замену */
+public class YamlRosterStorage implements RosterStorage {
+    private final File file;
+
+    public YamlRosterStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public List<StreamerInfo> load() {
+        if (!file.exists()) {
+            return null;
+        }
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        List<StreamerInfo> result = new ArrayList<>();
+        for (Map<?, ?> map : yaml.getMapList("streamers")) {
+            Object mc = map.get("mc");
+            Object twitch = map.get("twitch");
+            Object url = map.get("url");
+            if (mc instanceof String && twitch instanceof String && url instanceof String
+                    && !((String) mc).isEmpty() && !((String) twitch).isEmpty() && !((String) url).isEmpty()) {
+                Object desc = map.get("desc");
+                Object twitchId = map.get("twitch_id");
+                result.add(new StreamerInfo(result.size(), (String) mc, (String) twitch, (String) url,
+                        desc instanceof String ? (String) desc : "", twitchId != null ? twitchId.toString() : ""));
+            } else {
+                System.getLogger("TwitchPlugin").log(System.Logger.Level.WARNING, "Обнаружена невалидная запись стримера в " + file.getName() + ": " + map);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void save(List<StreamerInfo> snapshot, Collection<StreamerInfo> upserted, Collection<StreamerInfo> removed) throws IOException {
+        List<Map<String, Object>> rawList = new ArrayList<>(snapshot.size());
+        for (StreamerInfo s : snapshot) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("mc", s.mcName);
+            map.put("twitch", s.twitchName);
+            map.put("url", s.url);
+            if (s.desc != null && !s.desc.isEmpty()) {
+                map.put("desc", s.desc);
+            }
+            if (s.hasTwitchId()) {
+                map.put("twitch_id", s.twitchId);
+            }
+            rawList.add(map);
+        }
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("streamers", rawList);
+        writeAtomically(file.toPath(), yaml.saveToString());
+    }
+
+    static void writeAtomically(Path target, String content) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
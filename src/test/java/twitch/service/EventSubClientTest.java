@@ -0,0 +1,347 @@
+package twitch.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/* EventSubClient против локального WebSocket-сервера, изображающего Twitch */
+class EventSubClientTest {
+    private static final Logger LOGGER = Logger.getLogger("EventSubClientTest");
+
+    private StandInServer server;
+    private HttpServer subscriptions;
+    // тела POST /subscriptions; каждая подписка принимается с 202
+    private final BlockingQueue<String> subscriptionBodies = new LinkedBlockingQueue<>();
+    // уведомления, дошедшие до Listener: "online:<user_id>" / "offline:<user_id>"
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private TwitchApiService api;
+    private EventSubClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StandInServer();
+        subscriptions = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        subscriptions.createContext("/subscriptions", exchange -> {
+            subscriptionBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(202, -1);
+            exchange.close();
+        });
+        subscriptions.start();
+        api = new TwitchApiService("client", "token", LOGGER);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.stop();
+        }
+        api.shutdown();
+        subscriptions.stop(0);
+        server.close();
+    }
+
+    private EventSubClient newClient() {
+        return newClient(EventSubClient.DEFAULT_MAX_SUBSCRIPTIONS);
+    }
+
+    private EventSubClient newClient(int maxSubscriptions) {
+        String subscriptionsUrl = "http://127.0.0.1:" + subscriptions.getAddress().getPort() + "/subscriptions";
+        return new EventSubClient(api, LOGGER, server.url("/ws"), subscriptionsUrl, maxSubscriptions,
+                new EventSubClient.Listener() {
+                    @Override
+                    public void onStreamOnline(String userId) {
+                        events.add("online:" + userId);
+                    }
+
+                    @Override
+                    public void onStreamOffline(String userId) {
+                        events.add("offline:" + userId);
+                    }
+                });
+    }
+
+    // клиент подключён, получил welcome и подписан на оба типа для userId
+    private StandInConnection connectSubscribed(String sessionId, String userId) throws Exception {
+        client = newClient();
+        client.start(List.of(userId));
+        StandInConnection connection = server.accept();
+        connection.sendText(welcome(sessionId, null));
+        for (int i = 0; i < 2; i++) {
+            String body = subscriptionBodies.poll(5, TimeUnit.SECONDS);
+            assertNotNull(body, "ожидалась подписка stream.online и stream.offline");
+            assertTrue(body.contains("\"broadcaster_user_id\":\"" + userId + "\""), body);
+            assertTrue(body.contains("\"session_id\":\"" + sessionId + "\""), body);
+        }
+        waitUntil(() -> client.isSubscribed(userId));
+        return connection;
+    }
+
+    @Test
+    void reconnectsWhenClosedBeforeWelcome() throws Exception {
+        client = newClient();
+        client.start(List.of());
+
+        StandInConnection first = server.accept();
+        first.sendClose(4003, "connection unused");
+
+        StandInConnection second = server.accept();
+        assertNotNull(second, "после закрытия до session_welcome клиент должен переподключиться");
+        second.sendText(welcome("session-2", null));
+        waitUntil(client::isConnected);
+    }
+
+    @Test
+    void migratesSessionOnReconnectMessage() throws Exception {
+        client = newClient();
+        client.start(List.of());
+
+        StandInConnection first = server.accept();
+        first.sendText(welcome("session-1", null));
+        waitUntil(client::isConnected);
+
+        first.sendText(reconnect("session-1", server.url("/ws?reconnect")));
+        StandInConnection second = server.accept();
+        assertNotNull(second, "session_reconnect должен открыть соединение по reconnect_url");
+        assertEquals("/ws?reconnect", second.path);
+        second.sendText(welcome("session-2", null));
+
+        // после welcome на новом соединении клиент сам закрывает старое
+        assertEquals(8, first.readOpcode(5_000L));
+        assertTrue(client.isConnected());
+        // старое соединение закрыто штатно — лишнего переподключения нет
+        assertNull(server.accept(1_500L));
+    }
+
+    @Test
+    void deliversOnlineAndOfflineNotificationsByUserId() throws Exception {
+        StandInConnection connection = connectSubscribed("session-1", "1001");
+
+        connection.sendText(notification("stream.online", "1001", "renamed_login"));
+        assertEquals("online:1001", events.poll(5, TimeUnit.SECONDS));
+        connection.sendText(notification("stream.offline", "1001", "renamed_login"));
+        assertEquals("offline:1001", events.poll(5, TimeUnit.SECONDS));
+        assertNull(events.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void revocationReturnsChannelToPolling() throws Exception {
+        StandInConnection connection = connectSubscribed("session-1", "1001");
+
+        connection.sendText(revocation("stream.online", "1001"));
+        connection.sendText(revocation("stream.offline", "1001"));
+        waitUntil(() -> !client.isSubscribed("1001"));
+        assertNull(events.poll(300, TimeUnit.MILLISECONDS), "отзыв подписки не должен выглядеть как смена статуса");
+
+        // в той же сессии отозванная подписка не создаётся заново
+        client.syncUserIds(List.of("1001"));
+        assertNull(subscriptionBodies.poll(500, TimeUnit.MILLISECONDS));
+        assertFalse(client.isSubscribed("1001"));
+    }
+
+    @Test
+    void capsSubscriptionsPerSession() throws Exception {
+        client = newClient(2);
+        client.start(List.of("1001", "1002"));
+        StandInConnection connection = server.accept();
+        connection.sendText(welcome("session-1", null));
+
+        assertNotNull(subscriptionBodies.poll(5, TimeUnit.SECONDS));
+        assertNotNull(subscriptionBodies.poll(5, TimeUnit.SECONDS));
+        assertNull(subscriptionBodies.poll(500, TimeUnit.MILLISECONDS), "лимит — две подписки, то есть один стример");
+        assertTrue(client.isSubscribed("1001"));
+        assertFalse(client.isSubscribed("1002"));
+    }
+
+    private static String notification(String type, String userId, String login) {
+        return "{\"metadata\":{\"message_type\":\"notification\",\"subscription_type\":\"" + type + "\"},"
+                + "\"payload\":{\"subscription\":{\"type\":\"" + type + "\",\"condition\":{\"broadcaster_user_id\":\"" + userId + "\"}},"
+                + "\"event\":{\"broadcaster_user_id\":\"" + userId + "\",\"broadcaster_user_login\":\"" + login + "\"}}}";
+    }
+
+    private static String revocation(String type, String userId) {
+        return "{\"metadata\":{\"message_type\":\"revocation\",\"subscription_type\":\"" + type + "\"},"
+                + "\"payload\":{\"subscription\":{\"type\":\"" + type + "\",\"status\":\"authorization_revoked\","
+                + "\"condition\":{\"broadcaster_user_id\":\"" + userId + "\"}}}}";
+    }
+
+    private static String welcome(String sessionId, String reconnectUrl) {
+        return "{\"metadata\":{\"message_type\":\"session_welcome\"},"
+                + "\"payload\":{\"session\":{\"id\":\"" + sessionId + "\",\"keepalive_timeout_seconds\":10"
+                + (reconnectUrl != null ? ",\"reconnect_url\":\"" + reconnectUrl + "\"" : "") + "}}}";
+    }
+
+    private static String reconnect(String sessionId, String reconnectUrl) {
+        return "{\"metadata\":{\"message_type\":\"session_reconnect\"},"
+                + "\"payload\":{\"session\":{\"id\":\"" + sessionId + "\",\"reconnect_url\":\"" + reconnectUrl + "\"}}}";
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "условие не выполнилось за 5 секунд");
+            Thread.sleep(20L);
+        }
+    }
+
+    /* Минимальный WebSocket-сервер: рукопожатие RFC 6455, текстовые кадры и close без фрагментации */
+    private static final class StandInServer implements AutoCloseable {
+        private final ServerSocket socket = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+        private final BlockingQueue<StandInConnection> accepted = new LinkedBlockingQueue<>();
+        private final List<StandInConnection> connections = new CopyOnWriteArrayList<>();
+        private final Thread acceptor;
+
+        StandInServer() throws IOException {
+            acceptor = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        StandInConnection connection = new StandInConnection(socket.accept());
+                        connections.add(connection);
+                        accepted.add(connection);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }, "eventsub-stand-in");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String url(String path) {
+            return "ws://127.0.0.1:" + socket.getLocalPort() + path;
+        }
+
+        StandInConnection accept() throws InterruptedException {
+            return accept(5_000L);
+        }
+
+        StandInConnection accept(long timeoutMs) throws InterruptedException {
+            return accepted.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+            for (StandInConnection connection : connections) {
+                connection.socket.close();
+            }
+        }
+    }
+
+    private static final class StandInConnection {
+        final Socket socket;
+        final String path;
+        private final InputStream in;
+        private final OutputStream out;
+
+        StandInConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.out = socket.getOutputStream();
+            String request = readHeaders();
+            this.path = request.substring(request.indexOf(' ') + 1, request.indexOf(" HTTP/"));
+            String key = null;
+            for (String line : request.split("\r\n")) {
+                if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                    key = line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+            String accept;
+            try {
+                byte[] sha1 = MessageDigest.getInstance("SHA-1")
+                        .digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes(StandardCharsets.US_ASCII));
+                accept = Base64.getEncoder().encodeToString(sha1);
+            } catch (java.security.NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        private String readHeaders() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int matched = 0;
+            while (matched < 4) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("соединение закрыто во время рукопожатия");
+                }
+                buffer.write(b);
+                matched = (b == '\r' && matched % 2 == 0) || (b == '\n' && matched % 2 == 1) ? matched + 1 : 0;
+            }
+            return buffer.toString(StandardCharsets.US_ASCII);
+        }
+
+        synchronized void sendText(String text) throws IOException {
+            sendFrame(0x1, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        synchronized void sendClose(int code, String reason) throws IOException {
+            byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+            byte[] payload = new byte[2 + reasonBytes.length];
+            payload[0] = (byte) (code >> 8);
+            payload[1] = (byte) code;
+            System.arraycopy(reasonBytes, 0, payload, 2, reasonBytes.length);
+            sendFrame(0x8, payload);
+        }
+
+        private void sendFrame(int opcode, byte[] payload) throws IOException {
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else {
+                out.write(126);
+                out.write(payload.length >> 8);
+                out.write(payload.length & 0xFF);
+            }
+            out.write(payload);
+            out.flush();
+        }
+
+        // opcode следующего кадра клиента (кадры клиента всегда маскированы)
+        int readOpcode(long timeoutMs) throws IOException {
+            socket.setSoTimeout((int) timeoutMs);
+            int first = in.read();
+            int second = in.read();
+            if (first < 0 || second < 0) {
+                return -1;
+            }
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = (in.read() << 8) | in.read();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = (length << 8) | in.read();
+                }
+            }
+            in.readNBytes(4 + (int) length);
+            return first & 0x0F;
+        }
+    }
+}
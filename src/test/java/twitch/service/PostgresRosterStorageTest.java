@@ -0,0 +1,103 @@
+package twitch.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import twitch.model.StreamerInfo;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/* PostgresRosterStorage против локальной PostgreSQL. Без адреса базы или при недоступной базе тест пропускается:
+   mvn test -Dtwitch.test.postgres.url=jdbc:postgresql://127.0.0.1:5432/postgres -Dtwitch.test.postgres.user=postgres
+   Таблицы создаются в отдельной схеме, которая удаляется после теста */
+class PostgresRosterStorageTest {
+    private static final String SCHEMA = "twitch_roster_test";
+
+    private String url;
+    private String user;
+    private String password;
+    private PostgresRosterStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        url = System.getProperty("twitch.test.postgres.url", "");
+        assumeTrue(!url.isEmpty(), "twitch.test.postgres.url не задан");
+        user = System.getProperty("twitch.test.postgres.user", "postgres");
+        password = System.getProperty("twitch.test.postgres.password", "");
+        try {
+            execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE", "CREATE SCHEMA " + SCHEMA);
+        } catch (SQLException e) {
+            assumeTrue(false, "PostgreSQL недоступен: " + e.getMessage());
+        }
+        String schemaUrl = url + (url.contains("?") ? "&" : "?") + "currentSchema=" + SCHEMA;
+        storage = new PostgresRosterStorage(PostgresRosterStorage.dataSource("TwitchStream-test", schemaUrl, user, password, 2));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (storage != null) {
+            storage.close();
+            execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        }
+    }
+
+    private void execute(String... statements) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement st = connection.createStatement()) {
+            for (String sql : statements) {
+                st.executeUpdate(sql);
+            }
+        }
+    }
+
+    @Test
+    void roundTripsRosterChanges() throws Exception {
+        assertNull(storage.load(), "пустая база без отметки — ростер ещё не заведён");
+
+        StreamerInfo alpha = new StreamerInfo(0, "Alpha", "alpha_tv", "https://www.twitch.tv/alpha_tv", "описание", "1001");
+        StreamerInfo beta = new StreamerInfo(1, "Beta", "beta_tv", "https://www.twitch.tv/beta_tv", "", "");
+        // полная запись после миграции: точечных изменений нет
+        storage.save(List.of(alpha, beta), List.of(), List.of());
+
+        List<StreamerInfo> loaded = storage.load();
+        assertNotNull(loaded);
+        assertEquals(2, loaded.size());
+        assertSameEntry(alpha, loaded.get(0));
+        assertSameEntry(beta, loaded.get(1));
+
+        StreamerInfo renamed = new StreamerInfo(1, "Beta", "beta_live", "https://www.twitch.tv/beta_live", "", "2002");
+        storage.save(List.of(renamed), List.of(renamed), List.of(alpha));
+        loaded = storage.load();
+        assertEquals(1, loaded.size());
+        assertSameEntry(renamed, loaded.get(0));
+    }
+
+    @Test
+    void emptyTableAfterFirstSaveIsEmptyRoster() throws Exception {
+        StreamerInfo alpha = new StreamerInfo(0, "Alpha", "alpha_tv", "https://www.twitch.tv/alpha_tv", "", "");
+        storage.save(List.of(alpha), List.of(alpha), List.of());
+        storage.save(List.of(), List.of(), List.of(alpha));
+
+        List<StreamerInfo> loaded = storage.load();
+        assertNotNull(loaded, "после удаления всех стримеров ростер пуст, а не отсутствует");
+        assertTrue(loaded.isEmpty());
+    }
+
+    private static void assertSameEntry(StreamerInfo expected, StreamerInfo actual) {
+        assertEquals(expected.mcName, actual.mcName);
+        assertEquals(expected.twitchName, actual.twitchName);
+        assertEquals(expected.url, actual.url);
+        assertEquals(expected.desc, actual.desc);
+        assertEquals(expected.twitchId, actual.twitchId);
+    }
+}